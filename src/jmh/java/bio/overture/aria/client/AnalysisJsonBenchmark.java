@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.client;
+
+import bio.overture.aria.components.Jackson;
+import bio.overture.aria.model.Analysis;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import reactor.core.publisher.Mono;
+
+/** Reading an analysis from song json, directly and through the codec the WebClients use. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnalysisJsonBenchmark {
+  private static final ResolvableType ANALYSIS_TYPE = ResolvableType.forClass(Analysis.class);
+
+  @Param({"small", "typical", "large"})
+  String size;
+
+  private byte[] json;
+  private Map<String, Object> analysisMap;
+  private ObjectMapper mapper;
+  private Jackson2JsonDecoder decoder;
+
+  @Setup
+  public void setup() {
+    analysisMap = AnalysisPayloads.analysis(size);
+    json = AnalysisPayloads.json(analysisMap);
+    mapper = Jackson.mapper();
+    decoder = new Jackson2JsonDecoder(mapper);
+  }
+
+  @Benchmark
+  public Analysis mapper() throws IOException {
+    return mapper.readValue(json, Analysis.class);
+  }
+
+  @Benchmark
+  public Object webClientCodec() {
+    return decoder
+        .decodeToMono(
+            Mono.just(DefaultDataBufferFactory.sharedInstance.wrap(json)),
+            ANALYSIS_TYPE,
+            MediaType.APPLICATION_JSON,
+            Map.of())
+        .block();
+  }
+
+  @Benchmark
+  public Analysis convertValue() {
+    return Jackson.convertValue(analysisMap, Analysis.class);
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.client;
+
+import bio.overture.aria.components.Jackson;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.val;
+
+/** Song analysis json shaped like real responses, in the sizes the benchmarks are run at. */
+final class AnalysisPayloads {
+  private AnalysisPayloads() {}
+
+  // a single sample and file, typical of a sequencing experiment, and a large variant call batch
+  static Map<String, Object> analysis(String size) {
+    switch (size) {
+      case "small":
+        return analysis(1, 1, 10);
+      case "typical":
+        return analysis(4, 20, 100);
+      case "large":
+        return analysis(200, 5000, 5000);
+      default:
+        throw new IllegalArgumentException("Unknown payload size " + size);
+    }
+  }
+
+  static byte[] json(Map<String, Object> analysis) {
+    try {
+      return Jackson.sharedMapper().writeValueAsBytes(analysis);
+    } catch (JsonProcessingException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static Map<String, Object> analysis(int samples, int files, int dataFields) {
+    val analysis = new LinkedHashMap<String, Object>();
+    analysis.put("analysisId", "a1b2c3d4-0000-0000-0000-000000000000");
+    analysis.put("studyId", "TEST-CA");
+    analysis.put("analysisState", "PUBLISHED");
+    analysis.put("analysisType", Map.of("name", "variantCall", "version", 3));
+    analysis.put("createdAt", "2021-06-01T12:00:00.000");
+    analysis.put("updatedAt", "2021-06-02T12:00:00.000");
+    analysis.put("firstPublishedAt", "2021-06-02T12:00:00.000");
+    analysis.put("publishedAt", "2021-06-02T12:00:00.000");
+
+    val sampleList = new ArrayList<Map<String, Object>>();
+    for (int i = 0; i < samples; i++) {
+      sampleList.add(sample(i));
+    }
+    analysis.put("samples", sampleList);
+
+    val fileList = new ArrayList<Map<String, Object>>();
+    for (int i = 0; i < files; i++) {
+      fileList.add(file(i));
+    }
+    analysis.put("files", fileList);
+
+    analysis.put(
+        "analysisStateHistory",
+        List.of(
+            Map.of(
+                "initialState", "UNPUBLISHED",
+                "updatedState", "PUBLISHED",
+                "updatedAt", "2021-06-02T12:00:00.000")));
+    analysis.put("data", data(dataFields));
+    return analysis;
+  }
+
+  private static Map<String, Object> sample(int i) {
+    val sample = new LinkedHashMap<String, Object>();
+    sample.put("sampleId", "SA" + i);
+    sample.put("specimenId", "SP" + i);
+    sample.put("submitterSampleId", "sample-" + i);
+    sample.put("sampleType", "Total DNA");
+    sample.put("info", data(5));
+    sample.put(
+        "specimen",
+        Map.of(
+            "specimenId",
+            "SP" + i,
+            "donorId",
+            "DO" + i,
+            "submitterSpecimenId",
+            "specimen-" + i,
+            "tumourNormalDesignation",
+            "Tumour",
+            "specimenType",
+            "Primary tumour",
+            "info",
+            data(5)));
+    sample.put(
+        "donor",
+        Map.of(
+            "donorId",
+            "DO" + i,
+            "studyId",
+            "TEST-CA",
+            "submitterDonorId",
+            "donor-" + i,
+            "gender",
+            "Female",
+            "info",
+            data(5)));
+    return sample;
+  }
+
+  private static Map<String, Object> file(int i) {
+    val file = new LinkedHashMap<String, Object>();
+    file.put("objectId", String.format("00000000-0000-0000-0000-%012d", i));
+    file.put("studyId", "TEST-CA");
+    file.put("analysisId", "a1b2c3d4-0000-0000-0000-000000000000");
+    file.put("fileName", "file-" + i + ".vcf.gz");
+    file.put("fileType", "VCF");
+    file.put("fileMd5sum", "9a793e90d0d1e11301ea8da996446e59");
+    file.put("fileSize", 1024L * 1024 * i);
+    file.put("fileAccess", "controlled");
+    file.put("dataType", "Raw SNV Calls");
+    file.put("info", data(3));
+    return file;
+  }
+
+  private static Map<String, Object> data(int fields) {
+    val data = new LinkedHashMap<String, Object>();
+    for (int i = 0; i < fields; i++) {
+      data.put("field" + i, i % 3 == 0 ? List.of("value" + i, i) : "value" + i);
+    }
+    return data;
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.client;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import lombok.val;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+/**
+ * An object streamed as DataBuffers the way downloads are, md5 computed and buffers released, and
+ * written to and read back from a file. Each invocation moves one object of objectSizeBytes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataBufferStreamingBenchmark {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  @Param({"67108864"})
+  int objectSizeBytes;
+
+  private byte[] content;
+  private Path file;
+
+  @Setup
+  public void setup() throws IOException {
+    content = new byte[objectSizeBytes];
+    new Random(1).nextBytes(content);
+    file = Files.createTempFile("aria-benchmark", ".bin");
+    Files.write(file, content);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  @Benchmark
+  public String digest() {
+    val digest = Md5.newDigest();
+    body()
+        .doOnNext(buffer -> digest.update(buffer.asByteBuffer()))
+        .doOnNext(DataBufferUtils::release)
+        .blockLast();
+    return Md5.hex(digest);
+  }
+
+  @Benchmark
+  public Object writeToFile() throws IOException {
+    try (val channel =
+        AsynchronousFileChannel.open(
+            file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      return DataBufferUtils.write(body(), channel)
+          .doOnNext(DataBufferUtils::release)
+          .then()
+          .block();
+    }
+  }
+
+  @Benchmark
+  public Long readFromFile() {
+    return DataBufferUtils.read(file, DefaultDataBufferFactory.sharedInstance, BUFFER_SIZE)
+        .map(
+            buffer -> {
+              val size = (long) buffer.readableByteCount();
+              DataBufferUtils.release(buffer);
+              return size;
+            })
+        .reduce(0L, Long::sum)
+        .block();
+  }
+
+  // the content in download sized buffers, wrapped rather than copied like netty's pooled ones
+  private Flux<DataBuffer> body() {
+    return Flux.range(0, (objectSizeBytes + BUFFER_SIZE - 1) / BUFFER_SIZE)
+        .map(
+            i ->
+                DefaultDataBufferFactory.sharedInstance.wrap(
+                    ByteBuffer.wrap(
+                        content,
+                        i * BUFFER_SIZE,
+                        Math.min(BUFFER_SIZE, objectSizeBytes - i * BUFFER_SIZE))));
+  }
+}
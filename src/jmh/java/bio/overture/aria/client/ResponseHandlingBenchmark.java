@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.client;
+
+import bio.overture.aria.components.Jackson;
+import bio.overture.aria.exceptions.AriaClientException;
+import bio.overture.aria.model.Analysis;
+import bio.overture.aria.model.response.ServerErrorResponse;
+import java.util.concurrent.TimeUnit;
+import lombok.val;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeStrategies;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+/**
+ * Decoding song and score responses through a WebClient with the shared Jackson codecs, for a
+ * success and for an error. The exchange is a stub, so each invocation measures building and
+ * decoding the ClientResponse without any network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseHandlingBenchmark {
+  private static final String ERROR_JSON = "{\"message\":\"Analysis not found\"}";
+
+  private WebClient okClient;
+  private WebClient notFoundClient;
+  private WebClient serverErrorClient;
+
+  @Setup
+  public void setup() {
+    val analysisJson = new String(AnalysisPayloads.json(AnalysisPayloads.analysis("typical")));
+    val strategies =
+        ExchangeStrategies.builder()
+            .codecs(
+                configurer -> {
+                  configurer
+                      .defaultCodecs()
+                      .jackson2JsonDecoder(new Jackson2JsonDecoder(Jackson.mapper()));
+                  configurer
+                      .defaultCodecs()
+                      .jackson2JsonEncoder(new Jackson2JsonEncoder(Jackson.mapper()));
+                })
+            .build();
+    okClient = client(strategies, HttpStatus.OK, analysisJson);
+    notFoundClient = client(strategies, HttpStatus.NOT_FOUND, ERROR_JSON);
+    serverErrorClient = client(strategies, HttpStatus.INTERNAL_SERVER_ERROR, "Internal Error");
+  }
+
+  @Benchmark
+  public Object monoSuccess() {
+    return okClient.get().retrieve().bodyToMono(Analysis.class).block();
+  }
+
+  @Benchmark
+  public Object monoClientError() {
+    return notFoundClient
+        .get()
+        .exchangeToMono(
+            response ->
+                response
+                    .bodyToMono(ServerErrorResponse.class)
+                    .flatMap(
+                        res ->
+                            Mono.error(
+                                new AriaClientException(response.statusCode(), res.getMessage()))))
+        .onErrorResume(error -> Mono.empty())
+        .block();
+  }
+
+  @Benchmark
+  public Object fluxSuccess() {
+    return okClient.get().retrieve().bodyToFlux(DataBuffer.class).collectList().block();
+  }
+
+  @Benchmark
+  public Object fluxServerError() {
+    return serverErrorClient
+        .get()
+        .retrieve()
+        .bodyToFlux(DataBuffer.class)
+        .onErrorResume(error -> Mono.empty())
+        .collectList()
+        .block();
+  }
+
+  private static WebClient client(ExchangeStrategies strategies, HttpStatus status, String body) {
+    return WebClient.builder()
+        .exchangeStrategies(strategies)
+        .exchangeFunction(
+            request ->
+                Mono.fromSupplier(
+                    () ->
+                        ClientResponse.create(status, strategies)
+                            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                            .body(body)
+                            .build()))
+        .baseUrl("http://song.stub")
+        .build();
+  }
+}
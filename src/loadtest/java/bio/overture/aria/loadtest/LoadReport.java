@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.loadtest;
+
+import static java.lang.String.format;
+
+import bio.overture.aria.components.Jackson;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.val;
+import org.HdrHistogram.Recorder;
+
+/**
+ * What a load test run measured: operation latencies and throughput, errors, peak memory and gc
+ * while it ran, connections to each stub and the client's own meters.
+ */
+class LoadReport {
+  private static final Duration SAMPLE_INTERVAL = Duration.ofMillis(100);
+  private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+  private final Recorder latencies = new Recorder(3);
+  private final AtomicLong completed = new AtomicLong();
+  private final AtomicLong bytes = new AtomicLong();
+  private final Map<String, AtomicLong> errors = new ConcurrentHashMap<>();
+
+  private final AtomicLong peakHeapUsed = new AtomicLong();
+  private final AtomicLong peakDirectUsed = new AtomicLong();
+  private final AtomicLong peakNettyDirectUsed = new AtomicLong();
+  private final ScheduledExecutorService sampler =
+      Executors.newSingleThreadScheduledExecutor(
+          runnable -> {
+            val thread = new Thread(runnable, "loadtest-sampler");
+            thread.setDaemon(true);
+            return thread;
+          });
+  private long startNanos;
+  private long gcCountAtStart;
+  private long gcTimeMsAtStart;
+
+  void start() {
+    // latencies recorded during warmup are dropped
+    latencies.reset();
+    completed.set(0);
+    bytes.set(0);
+    errors.clear();
+    gcCountAtStart = gcCount();
+    gcTimeMsAtStart = gcTimeMs();
+    sampler.scheduleAtFixedRate(
+        this::sampleMemory, 0, SAMPLE_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+    startNanos = System.nanoTime();
+  }
+
+  void recordSuccess(long latencyNanos, long bytesMoved) {
+    latencies.recordValue(latencyNanos);
+    completed.incrementAndGet();
+    bytes.addAndGet(bytesMoved);
+  }
+
+  void recordError(Throwable error) {
+    errors.computeIfAbsent(error.toString(), e -> new AtomicLong()).incrementAndGet();
+  }
+
+  Map<String, Object> finish(
+      LoadTestSettings settings, List<StubServer> stubs, MeterRegistry clientMeters) {
+    val elapsedSec = (System.nanoTime() - startNanos) / 1e9;
+    sampler.shutdownNow();
+    sampleMemory();
+    val histogram = latencies.getIntervalHistogram();
+
+    val report = new LinkedHashMap<String, Object>();
+    val run = new LinkedHashMap<String, Object>();
+    run.put("scenario", settings.getScenario());
+    run.put("concurrency", settings.getConcurrency());
+    run.put("requests", settings.getRequests());
+    run.put("objectSizeBytes", settings.getObjectSizeBytes());
+    run.put("elapsedSec", round(elapsedSec));
+    report.put("run", run);
+
+    val throughput = new LinkedHashMap<String, Object>();
+    throughput.put("completed", completed.get());
+    throughput.put("failed", errors.values().stream().mapToLong(AtomicLong::get).sum());
+    throughput.put("opsPerSec", round(completed.get() / elapsedSec));
+    throughput.put("megabytesPerSec", round(bytes.get() / elapsedSec / (1024 * 1024)));
+    report.put("throughput", throughput);
+
+    val latency = new LinkedHashMap<String, Object>();
+    latency.put("meanMs", round(histogram.getMean() / 1e6));
+    for (val percentile : PERCENTILES) {
+      latency.put("p" + percentile + "Ms", round(histogram.getValueAtPercentile(percentile) / 1e6));
+    }
+    latency.put("maxMs", round(histogram.getMaxValue() / 1e6));
+    report.put("latency", latency);
+
+    val errorCounts = new TreeMap<String, Long>();
+    errors.forEach((error, count) -> errorCounts.put(error, count.get()));
+    report.put("errors", errorCounts);
+
+    val memory = new LinkedHashMap<String, Object>();
+    memory.put("peakHeapUsedMb", megabytes(peakHeapUsed.get()));
+    memory.put("peakDirectBuffersMb", megabytes(peakDirectUsed.get()));
+    memory.put("peakNettyPooledDirectMb", megabytes(peakNettyDirectUsed.get()));
+    memory.put("gcCount", gcCount() - gcCountAtStart);
+    memory.put("gcTimeMs", gcTimeMs() - gcTimeMsAtStart);
+    report.put("memory", memory);
+
+    val connections = new LinkedHashMap<String, Object>();
+    for (val stub : stubs) {
+      val counts = new LinkedHashMap<String, Object>();
+      counts.put("peakOpen", stub.getPeakConnections().get());
+      counts.put("opened", stub.getTotalConnections().get());
+      counts.put("requests", stub.getRequests().get());
+      counts.put("injectedErrors", stub.getInjectedErrors().get());
+      connections.put(stub.getName(), counts);
+    }
+    report.put("stubs", connections);
+    report.put("client", clientMeters(clientMeters));
+    return report;
+  }
+
+  static void print(Map<String, Object> report) {
+    report.forEach(
+        (section, values) -> {
+          System.out.println(section);
+          ((Map<?, ?>) values)
+              .forEach((key, value) -> System.out.println(format("  %-40s %s", key, value)));
+        });
+  }
+
+  static void write(Map<String, Object> report, Path file) throws IOException {
+    Files.createDirectories(file.toAbsolutePath().getParent());
+    Jackson.sharedMapper().writerWithDefaultPrettyPrinter().writeValue(file.toFile(), report);
+  }
+
+  private static Map<String, Object> clientMeters(MeterRegistry registry) {
+    val meters = new TreeMap<String, Object>();
+    registry.forEachMeter(
+        meter -> {
+          val id = meter.getId();
+          val name =
+              id.getName()
+                  + id.getTags().stream()
+                      .map(tag -> tag.getKey() + "=" + tag.getValue())
+                      .reduce("", (tags, tag) -> tags + " " + tag);
+          if (meter instanceof Timer) {
+            val timer = (Timer) meter;
+            meters.put(
+                name,
+                format(
+                    "count %s, mean %.2fms, max %.2fms",
+                    timer.count(),
+                    timer.mean(TimeUnit.MILLISECONDS),
+                    timer.max(TimeUnit.MILLISECONDS)));
+          } else if (meter instanceof Counter) {
+            meters.put(name, ((Counter) meter).count());
+          } else if (meter instanceof Gauge) {
+            meters.put(name, ((Gauge) meter).value());
+          }
+        });
+    return meters;
+  }
+
+  private void sampleMemory() {
+    peakHeapUsed.accumulateAndGet(
+        ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed(), Math::max);
+    ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+        .filter(pool -> pool.getName().equals("direct"))
+        .forEach(pool -> peakDirectUsed.accumulateAndGet(pool.getMemoryUsed(), Math::max));
+    peakNettyDirectUsed.accumulateAndGet(
+        PooledByteBufAllocator.DEFAULT.metric().usedDirectMemory(), Math::max);
+  }
+
+  private static long gcCount() {
+    return ManagementFactory.getGarbageCollectorMXBeans().stream()
+        .mapToLong(GarbageCollectorMXBean::getCollectionCount)
+        .sum();
+  }
+
+  private static long gcTimeMs() {
+    return ManagementFactory.getGarbageCollectorMXBeans().stream()
+        .mapToLong(GarbageCollectorMXBean::getCollectionTime)
+        .sum();
+  }
+
+  private static double megabytes(long bytes) {
+    return round(bytes / (1024.0 * 1024));
+  }
+
+  private static double round(double value) {
+    return Math.round(value * 100) / 100.0;
+  }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.loadtest;
+
+import bio.overture.aria.client.AriaClient;
+import bio.overture.aria.model.Analysis;
+import bio.overture.aria.model.AnalysisFile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Drives an AriaClient against in-process song, score and object store stubs and reports what it
+ * measured. Run with mvn -P loadtest verify -Dloadtest.args="scenario=download concurrency=128",
+ * see LoadTestSettings for the keys.
+ *
+ * <p>Scenarios, each operation picks its analysis or object round robin:
+ *
+ * <ul>
+ *   <li>metadata - getAnalysis
+ *   <li>download - downloadObject, streamed and discarded
+ *   <li>upload - initScoreUpload and uploadAndFinalize of a new object
+ *   <li>submit - submitPayload and publishAnalysis
+ *   <li>mixed - 60% metadata, 20% download, 10% upload and 10% submit
+ * </ul>
+ */
+@Slf4j
+public class LoadTest {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final LoadTestSettings settings;
+  private final StubBackend backend;
+  private final AriaClient client;
+  private final List<UUID> analysisIds;
+  private final List<String> objectIds;
+
+  private LoadTest(LoadTestSettings settings, StubBackend backend, AriaClient client) {
+    this.settings = settings;
+    this.backend = backend;
+    this.client = client;
+    this.analysisIds =
+        backend.getAnalysisIds().stream().map(UUID::fromString).collect(Collectors.toList());
+    this.objectIds =
+        backend.getFiles().stream()
+            .map(file -> (String) file.get("objectId"))
+            .collect(Collectors.toList());
+  }
+
+  public static void main(String[] args) throws Exception {
+    val settings = LoadTestSettings.parse(args);
+    // without a spring context logging defaults to debug for everything, which costs more than
+    // the requests being measured
+    LoggingSystem.get(LoadTest.class.getClassLoader())
+        .setLogLevel(LoggingSystem.ROOT_LOGGER_NAME, settings.getLogLevel());
+
+    try (val backend = StubBackend.start(settings)) {
+      val properties = settings.clientProperties();
+      properties.setSongRootUrl(backend.getSong().baseUrl());
+      properties.setScoreRootUrl(backend.getScore().baseUrl());
+      properties.setTokenUrl(backend.getSong().baseUrl() + "/oauth/token");
+      properties.setClientId("load-test");
+      properties.setClientSecret("load-test");
+
+      val clientMeters = new SimpleMeterRegistry();
+      val loadTest = new LoadTest(settings, backend, new AriaClient(properties, clientMeters));
+      val operation = loadTest.scenario(settings.getScenario());
+      val report = new LoadReport();
+
+      log.info("Warming up with {} operations", settings.getWarmupRequests());
+      loadTest.run(operation, settings.getWarmupRequests(), report);
+      clientMeters.clear();
+      val stubs = List.of(backend.getSong(), backend.getScore(), backend.getObjectStore());
+      stubs.forEach(StubServer::resetCounts);
+
+      log.info(
+          "Running {} {} operations, {} at a time",
+          settings.getRequests(),
+          settings.getScenario(),
+          settings.getConcurrency());
+      report.start();
+      loadTest.run(operation, settings.getRequests(), report);
+
+      val results = report.finish(settings, stubs, clientMeters);
+      LoadReport.print(results);
+      LoadReport.write(results, Path.of(settings.getReportFile()));
+      log.info("Report written to {}", settings.getReportFile());
+    }
+  }
+
+  private void run(IntFunction<Mono<Long>> operation, int count, LoadReport report) {
+    Flux.range(0, count)
+        .flatMap(
+            i ->
+                Mono.defer(
+                    () -> {
+                      val start = System.nanoTime();
+                      return operation
+                          .apply(i)
+                          .defaultIfEmpty(0L)
+                          .doOnNext(bytes -> report.recordSuccess(System.nanoTime() - start, bytes))
+                          .doOnError(report::recordError)
+                          .onErrorResume(error -> Mono.empty());
+                    }),
+            settings.getConcurrency())
+        .blockLast();
+  }
+
+  private IntFunction<Mono<Long>> scenario(String name) {
+    switch (name) {
+      case "metadata":
+        return this::getAnalysis;
+      case "download":
+        return this::download;
+      case "upload":
+        return this::upload;
+      case "submit":
+        return this::submitAndPublish;
+      case "mixed":
+        return i -> {
+          val slot = i % 10;
+          if (slot < 6) {
+            return getAnalysis(i);
+          } else if (slot < 8) {
+            return download(i);
+          } else if (slot < 9) {
+            return upload(i);
+          }
+          return submitAndPublish(i);
+        };
+      default:
+        throw new IllegalArgumentException("Unknown scenario " + name);
+    }
+  }
+
+  private Mono<Long> getAnalysis(int i) {
+    return client
+        .getAnalysis(backend.getStudyId(), analysisIds.get(i % analysisIds.size()))
+        .map(Analysis::getAnalysisId)
+        .thenReturn(0L);
+  }
+
+  private Mono<Long> download(int i) {
+    return client
+        .downloadObject(objectIds.get(i % objectIds.size()))
+        .map(
+            buffer -> {
+              long size = buffer.readableByteCount();
+              DataBufferUtils.release(buffer);
+              return size;
+            })
+        .reduce(0L, Long::sum);
+  }
+
+  private Mono<Long> upload(int i) {
+    val content = backend.getContent();
+    val file = new AnalysisFile();
+    file.setObjectId(UUID.randomUUID().toString());
+    file.setStudyId(backend.getStudyId());
+    file.setFileSize((long) content.length);
+    file.setFileMd5sum(backend.getContentMd5());
+
+    return client
+        .initScoreUpload(file, backend.getContentMd5())
+        .flatMap(spec -> client.uploadAndFinalize(spec, contentBuffers(content)))
+        .thenReturn((long) content.length);
+  }
+
+  private Mono<Long> submitAndPublish(int i) {
+    return client
+        .submitPayload(backend.getStudyId(), backend.submitPayload())
+        .flatMap(
+            submitted ->
+                client.publishAnalysis(
+                    backend.getStudyId(), UUID.fromString(submitted.getAnalysisId())))
+        .thenReturn(0L);
+  }
+
+  private static Flux<DataBuffer> contentBuffers(byte[] content) {
+    return Flux.range(0, (content.length + BUFFER_SIZE - 1) / BUFFER_SIZE)
+        .map(
+            i ->
+                DefaultDataBufferFactory.sharedInstance.wrap(
+                    ByteBuffer.wrap(
+                        content,
+                        i * BUFFER_SIZE,
+                        Math.min(BUFFER_SIZE, content.length - i * BUFFER_SIZE))));
+  }
+}
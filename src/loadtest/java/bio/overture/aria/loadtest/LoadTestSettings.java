@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.loadtest;
+
+import bio.overture.aria.properties.AriaClientProperties;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import lombok.Getter;
+import lombok.val;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.boot.logging.LogLevel;
+
+/**
+ * Load test settings from key=value arguments. Stub behaviour is set for all stubs at once (e.g.
+ * latencyMs=20) or for one of song, score and objectStore (e.g. objectStore.latencyMs=50), and any
+ * ariaclient.* key is bound onto the client properties like in application.yaml.
+ */
+@Getter
+class LoadTestSettings {
+  private final Map<String, String> args;
+
+  // metadata, download, upload, submit or mixed
+  private final String scenario;
+  // operations in flight at the same time
+  private final int concurrency;
+  // operations measured, after warmup ones that are not
+  private final int requests;
+  private final int warmupRequests;
+  // analyses song is seeded with, each with one object of objectSizeBytes
+  private final int analyses;
+  private final int objectSizeBytes;
+  // size of the parts score splits uploads into
+  private final long partSizeBytes;
+  // where the report is written as json, next to the one printed
+  private final String reportFile;
+  private final LogLevel logLevel;
+
+  private LoadTestSettings(Map<String, String> args) {
+    this.args = args;
+    this.scenario = args.getOrDefault("scenario", "mixed");
+    this.concurrency = Integer.parseInt(args.getOrDefault("concurrency", "64"));
+    this.requests = Integer.parseInt(args.getOrDefault("requests", "10000"));
+    this.warmupRequests = Integer.parseInt(args.getOrDefault("warmupRequests", "1000"));
+    this.analyses = Integer.parseInt(args.getOrDefault("analyses", "1000"));
+    this.objectSizeBytes = Integer.parseInt(args.getOrDefault("objectSizeBytes", "1048576"));
+    this.partSizeBytes = Long.parseLong(args.getOrDefault("partSizeBytes", "20971520"));
+    this.reportFile = args.getOrDefault("reportFile", "target/loadtest-report.json");
+    this.logLevel = LogLevel.valueOf(args.getOrDefault("logLevel", "INFO"));
+  }
+
+  static LoadTestSettings parse(String[] args) {
+    val values = new HashMap<String, String>();
+    for (val arg : args) {
+      val separator = arg.indexOf('=');
+      if (separator < 1) {
+        throw new IllegalArgumentException("Expected key=value but got " + arg);
+      }
+      values.put(arg.substring(0, separator), arg.substring(separator + 1));
+    }
+    return new LoadTestSettings(values);
+  }
+
+  StubBehaviour behaviourOf(String stub) {
+    return new StubBehaviour(
+        Duration.ofMillis(Long.parseLong(stubSetting(stub, "latencyMs", "5"))),
+        Duration.ofMillis(Long.parseLong(stubSetting(stub, "latencyJitterMs", "5"))),
+        Double.parseDouble(stubSetting(stub, "errorRate", "0")),
+        Long.parseLong(stubSetting(stub, "bandwidthBytesPerSec", "0")));
+  }
+
+  AriaClientProperties clientProperties() {
+    val properties =
+        new Binder(new MapConfigurationPropertySource(args))
+            .bindOrCreate("ariaclient", Bindable.of(AriaClientProperties.class));
+    // no retry settings have defaults in the client, these keep an injected error cheap
+    if (properties.getRetryMaxAttempts() == null) {
+      properties.setRetryMaxAttempts(3);
+    }
+    if (properties.getRetryDelaySec() == null) {
+      properties.setRetryDelaySec(1);
+    }
+    return properties;
+  }
+
+  private String stubSetting(String stub, String key, String defaultValue) {
+    return args.getOrDefault(stub + "." + key, args.getOrDefault(key, defaultValue));
+  }
+}
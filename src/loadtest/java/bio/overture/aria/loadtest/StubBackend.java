@@ -0,0 +1,508 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.loadtest;
+
+import static java.lang.String.format;
+
+import bio.overture.aria.components.Jackson;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+import lombok.Getter;
+import lombok.Value;
+import lombok.val;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+/**
+ * In-memory song, score and object store, each on its own stub server. Song is seeded with analyses
+ * that each have one file, and the object store holds an object for every file. All objects share
+ * the same content, so any number of them costs the memory of one.
+ */
+class StubBackend implements AutoCloseable {
+  private static final String STUDY_ID = "LOAD-TEST";
+  private static final int CHUNK_SIZE = 64 * 1024;
+  private static final Duration URL_LIFETIME = Duration.ofHours(1);
+  private static final DateTimeFormatter SIGNED_AT_FORMAT =
+      DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+
+  @Getter private final StubServer song;
+  @Getter private final StubServer score;
+  @Getter private final StubServer objectStore;
+
+  @Getter private final byte[] content;
+  @Getter private final String contentMd5;
+  private final long partSizeBytes;
+
+  private final Map<String, Map<String, Object>> analyses = new ConcurrentHashMap<>();
+  private final List<String> analysisOrder = new CopyOnWriteArrayList<>();
+  // object id to the analysis it belongs to
+  private final Map<String, String> fileAnalyses = new ConcurrentHashMap<>();
+  private final Map<String, StoredObject> objects = new ConcurrentHashMap<>();
+  private final Map<String, StoredObject> uploads = new ConcurrentHashMap<>();
+
+  private StubBackend(LoadTestSettings settings) {
+    this.content = new byte[settings.getObjectSizeBytes()];
+    new Random(1).nextBytes(content);
+    this.contentMd5 = md5Hex(content);
+    this.partSizeBytes = settings.getPartSizeBytes();
+
+    this.objectStore =
+        StubServer.start(
+            "objectStore",
+            settings.behaviourOf("objectStore"),
+            routes ->
+                routes
+                    .get("/objects/{id}", this::sendObject)
+                    .put("/objects/{id}/parts/{part}", this::receivePart));
+    this.score =
+        StubServer.start(
+            "score",
+            settings.behaviourOf("score"),
+            routes ->
+                routes
+                    .post("/upload/{id}/uploads", drained(this::initUpload))
+                    .post("/upload/{id}/parts", drained((req, res) -> res.status(200).send()))
+                    .post("/upload/{id}", drained(this::finalizeUpload))
+                    .get("/download/{id}", this::downloadSpec));
+    this.song =
+        StubServer.start(
+            "song",
+            settings.behaviourOf("song"),
+            routes ->
+                routes
+                    .post("/oauth/token", this::token)
+                    .get("/studies/{study}/analysis/paginated", this::analysisPage)
+                    .get("/studies/{study}/analysis/{id}/files", this::analysisFiles)
+                    .get("/studies/{study}/analysis/{id}", this::analysis)
+                    .get("/entities/{id}", this::fileEntity)
+                    .post("/submit/{study}", this::submit)
+                    .put("/studies/{study}/analysis/publish/{id}", stateChange("PUBLISHED"))
+                    .put("/studies/{study}/analysis/unpublish/{id}", stateChange("UNPUBLISHED"))
+                    .put("/studies/{study}/analysis/suppress/{id}", stateChange("SUPPRESSED")));
+
+    for (int i = 0; i < settings.getAnalyses(); i++) {
+      val objectId = UUID.randomUUID().toString();
+      objects.put(objectId, new StoredObject(content.length, contentMd5));
+      addAnalysis("PUBLISHED", List.of(file(objectId, contentMd5, content.length)));
+    }
+  }
+
+  static StubBackend start(LoadTestSettings settings) {
+    return new StubBackend(settings);
+  }
+
+  String getStudyId() {
+    return STUDY_ID;
+  }
+
+  List<String> getAnalysisIds() {
+    return List.copyOf(analysisOrder);
+  }
+
+  // the file of each seeded analysis, in the order they were seeded
+  List<Map<String, Object>> getFiles() {
+    return analysisOrder.stream()
+        .map(id -> firstFile(analyses.get(id)))
+        .collect(Collectors.toList());
+  }
+
+  String submitPayload() {
+    return json(
+        Map.of(
+            "studyId",
+            STUDY_ID,
+            "analysisType",
+            Map.of("name", "loadTest"),
+            "files",
+            List.of(
+                Map.of(
+                    "fileName",
+                    "object.bin",
+                    "fileSize",
+                    content.length,
+                    "fileMd5sum",
+                    contentMd5))));
+  }
+
+  @Override
+  public void close() {
+    song.close();
+    score.close();
+    objectStore.close();
+  }
+
+  private Publisher<Void> token(HttpServerRequest request, HttpServerResponse response) {
+    return sendJson(
+        response, Map.of("access_token", "load-test", "token_type", "bearer", "expires_in", 3600));
+  }
+
+  private Publisher<Void> analysisPage(HttpServerRequest request, HttpServerResponse response) {
+    val params = new QueryStringDecoder(request.uri()).parameters();
+    val states = Set.of(params.get("analysisStates").get(0).split(","));
+    val limit = Integer.parseInt(params.get("limit").get(0));
+    val offset = Integer.parseInt(params.get("offset").get(0));
+
+    val matching =
+        analysisOrder.stream()
+            .map(analyses::get)
+            .filter(analysis -> states.contains((String) analysis.get("analysisState")))
+            .collect(Collectors.toList());
+    val page =
+        matching.subList(
+            Math.min(offset, matching.size()), Math.min(offset + limit, matching.size()));
+    val body = new LinkedHashMap<String, Object>();
+    body.put("totalAnalyses", matching.size());
+    body.put("currentTotalAnalyses", page.size());
+    body.put("analyses", page);
+    return sendJson(response, body);
+  }
+
+  private Publisher<Void> analysis(HttpServerRequest request, HttpServerResponse response) {
+    return Optional.ofNullable(analyses.get(request.param("id")))
+        .map(analysis -> sendJson(response, analysis))
+        .orElseGet(() -> notFound(response, "Analysis " + request.param("id")));
+  }
+
+  private Publisher<Void> analysisFiles(HttpServerRequest request, HttpServerResponse response) {
+    return Optional.ofNullable(analyses.get(request.param("id")))
+        .map(analysis -> sendJson(response, analysis.get("files")))
+        .orElseGet(() -> notFound(response, "Analysis " + request.param("id")));
+  }
+
+  private Publisher<Void> fileEntity(HttpServerRequest request, HttpServerResponse response) {
+    val objectId = request.param("id");
+    return Optional.ofNullable(fileAnalyses.get(objectId))
+        .map(
+            analysisId ->
+                sendJson(
+                    response,
+                    Map.of("id", objectId, "projectCode", STUDY_ID, "gnosId", analysisId)))
+        .orElseGet(() -> notFound(response, "File " + objectId));
+  }
+
+  @SuppressWarnings("unchecked")
+  private Publisher<Void> submit(HttpServerRequest request, HttpServerResponse response) {
+    return request
+        .receive()
+        .aggregate()
+        .asString()
+        .flatMap(
+            payload -> {
+              val submitted = parse(payload);
+              val files = new ArrayList<Map<String, Object>>();
+              for (val file :
+                  (List<Map<String, Object>>) submitted.getOrDefault("files", List.of())) {
+                files.add(
+                    file(
+                        UUID.randomUUID().toString(),
+                        (String) file.get("fileMd5sum"),
+                        ((Number) file.get("fileSize")).longValue()));
+              }
+              val analysisId = addAnalysis("UNPUBLISHED", files);
+              return Mono.from(
+                  sendJson(response, Map.of("analysisId", analysisId, "status", "OK")));
+            });
+  }
+
+  private BiFunction<HttpServerRequest, HttpServerResponse, Publisher<Void>> stateChange(
+      String state) {
+    return drained(
+        (request, response) -> {
+          val analysis = analyses.get(request.param("id"));
+          if (analysis == null) {
+            return notFound(response, "Analysis " + request.param("id"));
+          }
+          analysis.put("analysisState", state);
+          return sendJson(
+              response, Map.of("message", "AnalysisId " + request.param("id") + " " + state));
+        });
+  }
+
+  // reactor netty closes a connection whose request body wasn't read, even an empty one
+  private static BiFunction<HttpServerRequest, HttpServerResponse, Publisher<Void>> drained(
+      BiFunction<HttpServerRequest, HttpServerResponse, Publisher<Void>> handler) {
+    return (request, response) ->
+        request.receive().then(Mono.defer(() -> Mono.from(handler.apply(request, response))));
+  }
+
+  private Publisher<Void> initUpload(HttpServerRequest request, HttpServerResponse response) {
+    val objectId = request.param("id");
+    val params = new QueryStringDecoder(request.uri()).parameters();
+    val size = Long.parseLong(params.get("fileSize").get(0));
+    val uploadId = UUID.randomUUID().toString();
+    uploads.put(uploadId, new StoredObject(size, params.get("md5").get(0)));
+
+    val parts = new ArrayList<Map<String, Object>>();
+    val partCount = Math.max(1, (size + partSizeBytes - 1) / partSizeBytes);
+    for (int i = 0; i < partCount; i++) {
+      val offset = i * partSizeBytes;
+      parts.add(
+          Map.of(
+              "partNumber",
+              i + 1,
+              "partSize",
+              Math.min(partSizeBytes, size - offset),
+              "offset",
+              offset,
+              "url",
+              presignedUrl(format("/objects/%s/parts/%s", objectId, i + 1))));
+    }
+    return sendJson(
+        response,
+        Map.of("objectId", objectId, "uploadId", uploadId, "objectSize", size, "parts", parts));
+  }
+
+  private Publisher<Void> finalizeUpload(HttpServerRequest request, HttpServerResponse response) {
+    val params = new QueryStringDecoder(request.uri()).parameters();
+    val upload = uploads.remove(params.get("uploadId").get(0));
+    if (upload == null) {
+      return notFound(response, "Upload " + params.get("uploadId").get(0));
+    }
+    objects.put(request.param("id"), upload);
+    return response.status(200).send();
+  }
+
+  private Publisher<Void> downloadSpec(HttpServerRequest request, HttpServerResponse response) {
+    val objectId = request.param("id");
+    val object = objects.get(objectId);
+    if (object == null) {
+      return notFound(response, "Object " + objectId);
+    }
+    val part =
+        Map.of(
+            "partNumber",
+            1,
+            "partSize",
+            object.getSize(),
+            "offset",
+            0,
+            "url",
+            presignedUrl("/objects/" + objectId));
+    return sendJson(
+        response,
+        Map.of(
+            "objectId",
+            objectId,
+            "objectMd5",
+            object.getMd5(),
+            "objectSize",
+            object.getSize(),
+            "parts",
+            List.of(part)));
+  }
+
+  private Publisher<Void> sendObject(HttpServerRequest request, HttpServerResponse response) {
+    val object = objects.get(request.param("id"));
+    if (object == null) {
+      return notFound(response, "Object " + request.param("id"));
+    }
+    // uploaded objects are served as the shared content too, cut to their size
+    val size = Math.min(object.getSize(), content.length);
+    long start = 0;
+    long end = size - 1;
+    val range = request.requestHeaders().get(HttpHeaderNames.RANGE);
+    if (range != null && range.startsWith("bytes=")) {
+      val bounds = range.substring("bytes=".length()).split("-");
+      start = Long.parseLong(bounds[0]);
+      end = bounds.length > 1 ? Math.min(Long.parseLong(bounds[1]), size - 1) : size - 1;
+      response.status(HttpResponseStatus.PARTIAL_CONTENT);
+    }
+    return response
+        .header(HttpHeaderNames.CONTENT_LENGTH, String.valueOf(end - start + 1))
+        .send(chunks(start, end));
+  }
+
+  private Publisher<Void> receivePart(HttpServerRequest request, HttpServerResponse response) {
+    val digest = newDigest();
+    val bandwidth = objectStore.getBehaviour();
+    // the body is read no faster than the bandwidth cap allows
+    return request
+        .receive()
+        .map(
+            buffer -> {
+              val size = buffer.readableBytes();
+              digest.update(buffer.nioBuffer());
+              return size;
+            })
+        .concatMap(size -> Mono.delay(bandwidth.transferTime(size)))
+        .then(
+            Mono.defer(
+                () ->
+                    Mono.from(
+                        response.header(HttpHeaderNames.ETAG, "\"" + hex(digest) + "\"").send())));
+  }
+
+  private Flux<ByteBuf> chunks(long start, long end) {
+    val chunkCount = (int) ((end - start + CHUNK_SIZE) / CHUNK_SIZE);
+    val chunks =
+        Flux.range(0, chunkCount)
+            .map(
+                i -> {
+                  val offset = start + (long) i * CHUNK_SIZE;
+                  val length = (int) Math.min(CHUNK_SIZE, end - offset + 1);
+                  return Unpooled.wrappedBuffer(content, (int) offset, length);
+                });
+    val chunkTime = objectStore.getBehaviour().transferTime(CHUNK_SIZE);
+    return chunkTime.isZero() ? chunks : chunks.delayElements(chunkTime);
+  }
+
+  private String addAnalysis(String state, List<Map<String, Object>> files) {
+    val analysisId = UUID.randomUUID().toString();
+    val now = LocalDateTime.now().toString();
+    val analysis = new ConcurrentHashMap<String, Object>();
+    analysis.put("analysisId", analysisId);
+    analysis.put("studyId", STUDY_ID);
+    analysis.put("analysisState", state);
+    analysis.put("analysisType", Map.of("name", "loadTest", "version", 1));
+    analysis.put("createdAt", now);
+    analysis.put("updatedAt", now);
+    analysis.put(
+        "samples",
+        List.of(
+            Map.of(
+                "sampleId", "SA1",
+                "submitterSampleId", "sample-1",
+                "sampleType", "Total DNA",
+                "specimen", Map.of("specimenId", "SP1", "specimenType", "Normal"),
+                "donor", Map.of("donorId", "DO1", "gender", "Female"))));
+    for (val file : files) {
+      file.put("analysisId", analysisId);
+      fileAnalyses.put((String) file.get("objectId"), analysisId);
+    }
+    analysis.put("files", files);
+    analysis.put("data", Map.of("experiment", Map.of("platform", "ILLUMINA")));
+    analyses.put(analysisId, analysis);
+    analysisOrder.add(analysisId);
+    return analysisId;
+  }
+
+  private static Map<String, Object> file(String objectId, String md5, long size) {
+    val file = new ConcurrentHashMap<String, Object>();
+    file.put("objectId", objectId);
+    file.put("studyId", STUDY_ID);
+    file.put("fileName", objectId + ".bin");
+    file.put("fileType", "BIN");
+    file.put("fileMd5sum", md5);
+    file.put("fileSize", size);
+    file.put("fileAccess", "open");
+    file.put("dataType", "Load Test");
+    return file;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> firstFile(Map<String, Object> analysis) {
+    return ((List<Map<String, Object>>) analysis.get("files")).get(0);
+  }
+
+  private String presignedUrl(String path) {
+    // encoded the way score returns them, the client decodes the url before using it
+    val signedAt = LocalDateTime.now(ZoneOffset.UTC).format(SIGNED_AT_FORMAT);
+    return objectStore.baseUrl()
+        + path
+        + "?X-Amz-Algorithm=AWS4-HMAC-SHA256%26X-Amz-Date="
+        + signedAt
+        + "%26X-Amz-Expires="
+        + URL_LIFETIME.getSeconds()
+        + "%26X-Amz-Signature=load-test";
+  }
+
+  private static Publisher<Void> sendJson(HttpServerResponse response, Object body) {
+    return response
+        .header(HttpHeaderNames.CONTENT_TYPE, "application/json")
+        .sendByteArray(Mono.just(jsonBytes(body)));
+  }
+
+  private static Publisher<Void> notFound(HttpServerResponse response, String what) {
+    return sendJson(
+        response.status(HttpResponseStatus.NOT_FOUND), Map.of("message", what + " not found"));
+  }
+
+  private static String json(Object value) {
+    return new String(jsonBytes(value));
+  }
+
+  private static byte[] jsonBytes(Object value) {
+    try {
+      return Jackson.sharedMapper().writeValueAsBytes(value);
+    } catch (JsonProcessingException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static Map<String, Object> parse(String json) {
+    try {
+      return Jackson.sharedMapper().readValue(json, new TypeReference<Map<String, Object>>() {});
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String md5Hex(byte[] bytes) {
+    val digest = newDigest();
+    digest.update(bytes);
+    return hex(digest);
+  }
+
+  private static String hex(MessageDigest digest) {
+    return format("%032x", new BigInteger(1, digest.digest()));
+  }
+
+  @Value
+  private static class StoredObject {
+    long size;
+    String md5;
+  }
+}
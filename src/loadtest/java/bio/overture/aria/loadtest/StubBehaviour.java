@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.loadtest;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import lombok.Value;
+
+/** How a stub server misbehaves: added latency, injected failures and a bandwidth cap. */
+@Value
+class StubBehaviour {
+  Duration latency;
+  // every response waits latency plus a random amount up to this
+  Duration latencyJitter;
+  // fraction of requests answered with a 503 instead
+  double errorRate;
+  // bytes per second each object store transfer is limited to, 0 is unlimited
+  long bandwidthBytesPerSec;
+
+  Duration nextLatency() {
+    if (latencyJitter.isZero()) {
+      return latency;
+    }
+    return latency.plusNanos(ThreadLocalRandom.current().nextLong(latencyJitter.toNanos() + 1));
+  }
+
+  boolean nextFails() {
+    return errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate;
+  }
+
+  // time a transfer of size bytes takes at the bandwidth cap
+  Duration transferTime(long size) {
+    if (bandwidthBytesPerSec <= 0) {
+      return Duration.ZERO;
+    }
+    return Duration.ofNanos(size * 1_000_000_000L / bandwidthBytesPerSec);
+  }
+}
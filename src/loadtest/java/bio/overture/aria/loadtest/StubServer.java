@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.loadtest;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import lombok.Getter;
+import lombok.val;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+import reactor.netty.http.server.HttpServerRoutes;
+
+/**
+ * An in-process http server standing in for one downstream. Every route is delayed and fails
+ * according to the stub's behaviour, and the connections clients open to it are counted.
+ */
+class StubServer implements AutoCloseable {
+  @Getter private final String name;
+  @Getter private final StubBehaviour behaviour;
+  private final DisposableServer server;
+
+  private final AtomicInteger openConnections = new AtomicInteger();
+  @Getter private final AtomicInteger peakConnections = new AtomicInteger();
+  @Getter private final AtomicLong totalConnections = new AtomicLong();
+  @Getter private final AtomicLong requests = new AtomicLong();
+  @Getter private final AtomicLong injectedErrors = new AtomicLong();
+
+  private StubServer(String name, StubBehaviour behaviour, Consumer<Routes> routes) {
+    this.name = name;
+    this.behaviour = behaviour;
+    this.server =
+        HttpServer.create()
+            .host("localhost")
+            .port(0)
+            // counted per channel, doOnConnection would see every request of a kept alive one
+            .doOnChannelInit(
+                (observer, channel, address) -> {
+                  totalConnections.incrementAndGet();
+                  val open = openConnections.incrementAndGet();
+                  peakConnections.accumulateAndGet(open, Math::max);
+                  channel.closeFuture().addListener(closed -> openConnections.decrementAndGet());
+                })
+            .route(httpRoutes -> routes.accept(new Routes(httpRoutes)))
+            .bindNow();
+  }
+
+  static StubServer start(String name, StubBehaviour behaviour, Consumer<Routes> routes) {
+    return new StubServer(name, behaviour, routes);
+  }
+
+  String baseUrl() {
+    return "http://localhost:" + server.port();
+  }
+
+  // counting starts over from the connections open now, e.g. once warmup is done
+  void resetCounts() {
+    peakConnections.set(openConnections.get());
+    totalConnections.set(0);
+    requests.set(0);
+    injectedErrors.set(0);
+  }
+
+  @Override
+  public void close() {
+    server.disposeNow();
+  }
+
+  private BiFunction<HttpServerRequest, HttpServerResponse, Publisher<Void>> misbehaving(
+      BiFunction<HttpServerRequest, HttpServerResponse, Publisher<Void>> handler) {
+    return (request, response) ->
+        Mono.delay(behaviour.nextLatency())
+            .then(
+                Mono.defer(
+                    () -> {
+                      requests.incrementAndGet();
+                      if (behaviour.nextFails()) {
+                        injectedErrors.incrementAndGet();
+                        // the client only reports a 5xx that has a body
+                        return response
+                            .status(503)
+                            .sendString(Mono.just("Injected failure"))
+                            .then();
+                      }
+                      return Mono.from(handler.apply(request, response));
+                    }));
+  }
+
+  /** Registers routes on the server, each behind the stub's latency and failures. */
+  class Routes {
+    private final HttpServerRoutes routes;
+
+    private Routes(HttpServerRoutes routes) {
+      this.routes = routes;
+    }
+
+    Routes get(
+        String path, BiFunction<HttpServerRequest, HttpServerResponse, Publisher<Void>> handler) {
+      routes.get(path, misbehaving(handler));
+      return this;
+    }
+
+    Routes post(
+        String path, BiFunction<HttpServerRequest, HttpServerResponse, Publisher<Void>> handler) {
+      routes.post(path, misbehaving(handler));
+      return this;
+    }
+
+    Routes put(
+        String path, BiFunction<HttpServerRequest, HttpServerResponse, Publisher<Void>> handler) {
+      routes.put(path, misbehaving(handler));
+      return this;
+    }
+  }
+}
@@ -1,7 +1,10 @@
 package bio.overture.aria.autoconfigure;
 
+import bio.overture.aria.client.AriaBlockingClient;
 import bio.overture.aria.client.AriaClient;
 import bio.overture.aria.properties.AriaClientProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.context.annotation.Bean;
@@ -19,7 +22,18 @@ public class AriaClientAutoConfiguration {
   @Bean
   @Autowired
   @ConditionalOnMissingBean
-  public AriaClient ariaClient(AriaClientProperties properties) {
-    return new AriaClient(properties);
+  public AriaClient ariaClient(
+      AriaClientProperties properties, ObjectProvider<MeterRegistry> meterRegistry) {
+    // metrics are recorded only when the application has a meter registry
+    return new AriaClient(properties, meterRegistry.getIfAvailable());
+  }
+
+  // the wrapped client is a bean of its own and is closed as one
+  @Bean(destroyMethod = "")
+  @Autowired
+  @ConditionalOnMissingBean
+  public AriaBlockingClient ariaBlockingClient(
+      AriaClient ariaClient, AriaClientProperties properties) {
+    return new AriaBlockingClient(ariaClient, properties.getBlockingBulkParallelism());
   }
 }
@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.client;
+
+import static bio.overture.aria.client.AriaClientMetrics.OPERATION_ATTRIBUTE;
+import static java.lang.String.format;
+
+import bio.overture.aria.exceptions.AriaClientException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import lombok.val;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+/**
+ * Limits how many requests are in flight to a single downstream, adapting the limit to how the
+ * downstream copes (additive increase, multiplicative decrease). While requests are answered
+ * without errors and close to the usual latency the limit grows by one, and it shrinks by
+ * backoffRatio on a 5xx, 429, failed request or a latency over latencyTolerance times the usual.
+ * Requests over the limit wait in a queue of at most maxQueueSize, beyond that they fail with a
+ * 429, which like any 4xx is not retried.
+ *
+ * <p>The usual latency is kept per operation, as a lookup and a publish take very different times,
+ * and is the time until the response headers arrive. A request holds its place until its response
+ * body has been read, so streamed bodies count against the limit for as long as they stream.
+ * Without a latency signal only errors shrink the limit, which suits transfers whose time depends
+ * on their size rather than on how loaded the downstream is.
+ */
+class AdaptiveConcurrencyLimiter {
+  // the usual latency drops to any faster response right away but only creeps up by this share of
+  // each slower one, so it tracks the unloaded latency rather than following a rising load
+  private static final double LATENCY_DRIFT = 0.01;
+  // an operation's latency only counts once its usual latency is based on this many responses
+  private static final int LATENCY_MIN_SAMPLES = 10;
+  private static final String NO_OPERATION = "";
+
+  private final Downstream target;
+  private final int minLimit;
+  private final int maxLimit;
+  private final int maxQueueSize;
+  private final double backoffRatio;
+  private final double latencyTolerance;
+  private final boolean latencySignal;
+
+  private final Deque<Waiter> waiting = new ArrayDeque<>();
+  private final Map<String, UsualLatency> usualLatencies = new HashMap<>();
+  private double limit;
+  private int inFlight;
+
+  private AdaptiveConcurrencyLimiter(
+      Downstream target,
+      int initialLimit,
+      int minLimit,
+      int maxLimit,
+      int maxQueueSize,
+      double backoffRatio,
+      double latencyTolerance,
+      boolean latencySignal) {
+    this.target = target;
+    this.limit = initialLimit;
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.maxQueueSize = maxQueueSize;
+    this.backoffRatio = backoffRatio;
+    this.latencyTolerance = latencyTolerance;
+    this.latencySignal = latencySignal;
+  }
+
+  static AdaptiveConcurrencyLimiter of(
+      Downstream target,
+      int initialLimit,
+      int minLimit,
+      int maxLimit,
+      int maxQueueSize,
+      double backoffRatio,
+      double latencyTolerance) {
+    return new AdaptiveConcurrencyLimiter(
+        target,
+        initialLimit,
+        minLimit,
+        maxLimit,
+        maxQueueSize,
+        backoffRatio,
+        latencyTolerance,
+        true);
+  }
+
+  /** A limiter that only backs off on errors, for downstreams whose latency isn't a load signal. */
+  static AdaptiveConcurrencyLimiter withoutLatencySignal(
+      Downstream target,
+      int initialLimit,
+      int minLimit,
+      int maxLimit,
+      int maxQueueSize,
+      double backoffRatio) {
+    return new AdaptiveConcurrencyLimiter(
+        target, initialLimit, minLimit, maxLimit, maxQueueSize, backoffRatio, 1, false);
+  }
+
+  ExchangeFilterFunction filter() {
+    return (request, next) ->
+        Mono.defer(
+            () -> {
+              val waiter = new Waiter();
+              val operation =
+                  request.attribute(OPERATION_ATTRIBUTE).map(Object::toString).orElse(NO_OPERATION);
+              return Mono.<Void>create(sink -> acquire(waiter, sink))
+                  .then(
+                      Mono.defer(
+                          () -> {
+                            val start = System.nanoTime();
+                            return next.exchange(request)
+                                .map(
+                                    response -> {
+                                      record(
+                                          operation,
+                                          System.nanoTime() - start,
+                                          response.statusCode().is5xxServerError()
+                                              || response.statusCode()
+                                                  == HttpStatus.TOO_MANY_REQUESTS);
+                                      // the place is held until the body is read or released,
+                                      // and given back before the caller hears the body ended
+                                      return response
+                                          .mutate()
+                                          .body(
+                                              body ->
+                                                  body.doOnTerminate(() -> release(waiter))
+                                                      .doOnCancel(() -> release(waiter)))
+                                          .build();
+                                    })
+                                .doOnError(
+                                    e -> {
+                                      // the client's own errors, like an open circuit breaker,
+                                      // never reached the downstream so they say nothing of it
+                                      if (!(e instanceof AriaClientException)) {
+                                        record(operation, System.nanoTime() - start, true);
+                                      }
+                                      release(waiter);
+                                    });
+                          }))
+                  // a request cancelled while waiting or in flight gives its place back as is
+                  .doOnCancel(() -> release(waiter));
+            });
+  }
+
+  synchronized int getLimit() {
+    return (int) limit;
+  }
+
+  private void acquire(Waiter waiter, MonoSink<Void> sink) {
+    synchronized (this) {
+      if (inFlight < (int) limit) {
+        inFlight++;
+        waiter.granted = true;
+      } else if (waiting.size() >= maxQueueSize) {
+        sink.error(
+            new AriaClientException(
+                HttpStatus.TOO_MANY_REQUESTS,
+                format("Too many requests waiting for %s", target.tag())));
+        return;
+      } else {
+        waiter.sink = sink;
+        waiting.add(waiter);
+        sink.onCancel(() -> cancel(waiter));
+        return;
+      }
+    }
+    sink.success();
+  }
+
+  private synchronized void cancel(Waiter waiter) {
+    waiting.remove(waiter);
+  }
+
+  private synchronized void record(String operation, long latencyNanos, boolean dropped) {
+    val usual = usualLatencies.computeIfAbsent(operation, op -> new UsualLatency());
+    val slow =
+        latencySignal
+            && usual.samples >= LATENCY_MIN_SAMPLES
+            && latencyNanos > usual.nanos * latencyTolerance;
+
+    if (dropped || slow) {
+      limit = Math.max(minLimit, limit * backoffRatio);
+    } else if (inFlight > limit / 2) {
+      // only grow when the limit is actually being used, otherwise it would grow unbounded
+      limit = Math.min(maxLimit, limit + 1);
+    }
+    if (!dropped) {
+      usual.nanos =
+          usual.samples == 0 || latencyNanos < usual.nanos
+              ? latencyNanos
+              : usual.nanos + (latencyNanos - usual.nanos) * LATENCY_DRIFT;
+      usual.samples++;
+    }
+  }
+
+  private void release(Waiter waiter) {
+    synchronized (this) {
+      if (!waiter.granted) {
+        return;
+      }
+      waiter.granted = false;
+      inFlight--;
+    }
+    grantWaiting();
+  }
+
+  private void grantWaiting() {
+    while (true) {
+      Waiter next;
+      synchronized (this) {
+        if (inFlight >= (int) limit || waiting.isEmpty()) {
+          return;
+        }
+        next = waiting.poll();
+        inFlight++;
+        next.granted = true;
+      }
+      // completed outside the lock as the request starts right away on this thread
+      next.sink.success();
+    }
+  }
+
+  private static class UsualLatency {
+    private double nanos;
+    private long samples;
+  }
+
+  private static class Waiter {
+    private boolean granted;
+    private MonoSink<Void> sink;
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.client;
+
+import static java.lang.String.format;
+
+import bio.overture.aria.exceptions.AriaClientException;
+import bio.overture.aria.model.Analysis;
+import bio.overture.aria.model.AnalysisFile;
+import bio.overture.aria.model.BulkResult;
+import bio.overture.aria.properties.AriaClientProperties;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import lombok.Getter;
+import lombok.val;
+import org.springframework.http.HttpStatus;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Blocking facade of {@link AriaClient} for callers that aren't reactive. Bulk methods run their
+ * items concurrently in one pipeline and block once for all of them, instead of the caller blocking
+ * on each item in turn. Results come back in the order the items were given, one per item, and a
+ * failed item doesn't fail the others.
+ */
+public class AriaBlockingClient implements AutoCloseable {
+  @Getter private final AriaClient client;
+  private final int parallelism;
+
+  public AriaBlockingClient(AriaClientProperties properties) {
+    this(new AriaClient(properties), properties.getBlockingBulkParallelism());
+  }
+
+  public AriaBlockingClient(AriaClient client, int parallelism) {
+    this.client = client;
+    this.parallelism = parallelism;
+  }
+
+  public Analysis getAnalysis(String studyId, UUID analysisId) throws AriaClientException {
+    return block(client.getAnalysis(studyId, analysisId));
+  }
+
+  public String uploadAndFinalize(AnalysisFile analysisFile, Path file) throws AriaClientException {
+    return block(client.uploadAndFinalize(analysisFile, file));
+  }
+
+  public String publishAnalysis(String studyId, UUID analysisId) throws AriaClientException {
+    return block(client.publishAnalysis(studyId, analysisId));
+  }
+
+  public List<BulkResult<UUID, Analysis>> getAnalyses(
+      String studyId, Collection<UUID> analysisIds) {
+    return bulk(analysisIds, analysisId -> client.getAnalysis(studyId, analysisId));
+  }
+
+  /**
+   * Uploads each file to the object of the AnalysisFile it is mapped to. Results follow the
+   * iteration order of the map, so pass a LinkedHashMap to get them back in a known order.
+   */
+  public List<BulkResult<AnalysisFile, String>> uploadFiles(Map<AnalysisFile, Path> files) {
+    return bulk(
+        files.keySet(),
+        analysisFile -> client.uploadAndFinalize(analysisFile, files.get(analysisFile)));
+  }
+
+  public List<BulkResult<UUID, String>> publishAnalyses(
+      String studyId, Collection<UUID> analysisIds) {
+    return bulk(analysisIds, analysisId -> client.publishAnalysis(studyId, analysisId));
+  }
+
+  /** Closes the wrapped client. */
+  @Override
+  public void close() {
+    client.close();
+  }
+
+  private <K, V> List<BulkResult<K, V>> bulk(Collection<K> keys, Function<K, Mono<V>> call) {
+    // At most parallelism items are in flight, results are put back in the order of the keys as
+    // they complete. The client's own concurrency limiter still applies to every request.
+    return Flux.fromIterable(keys)
+        .flatMapSequential(
+            key ->
+                call.apply(key)
+                    .map(value -> BulkResult.<K, V>success(key, value))
+                    // every key gets a result, a call that completes empty counts as not found
+                    .switchIfEmpty(
+                        Mono.fromSupplier(
+                            () ->
+                                BulkResult.failure(
+                                    key,
+                                    new AriaClientException(
+                                        HttpStatus.NOT_FOUND, format("%s not found", key)))))
+                    .onErrorResume(e -> Mono.just(BulkResult.failure(key, e))),
+            parallelism)
+        .collectList()
+        .block();
+  }
+
+  private static <T> T block(Mono<T> mono) throws AriaClientException {
+    try {
+      return mono.block();
+    } catch (RuntimeException e) {
+      // block wraps checked exceptions, callers get back the AriaClientException the call failed
+      // with
+      val cause = Exceptions.unwrap(e);
+      if (cause instanceof AriaClientException) {
+        throw (AriaClientException) cause;
+      }
+      throw e;
+    }
+  }
+}
@@ -18,68 +18,156 @@
 
 package bio.overture.aria.client;
 
+import static bio.overture.aria.client.AriaClientMetrics.OPERATION_ATTRIBUTE;
 import static java.lang.String.format;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
 
+import bio.overture.aria.components.Jackson;
+import bio.overture.aria.components.JsonArrayFieldDecoder;
+import bio.overture.aria.components.JsonSectionDeserializer;
+import bio.overture.aria.components.JsonSectionMode;
 import bio.overture.aria.exceptions.AriaClientException;
 import bio.overture.aria.model.Analysis;
 import bio.overture.aria.model.AnalysisFile;
+import bio.overture.aria.model.AnalysisSubmission;
+import bio.overture.aria.model.BulkResult;
 import bio.overture.aria.model.LegacyFileEntity;
 import bio.overture.aria.model.ScoreFileSpec;
+import bio.overture.aria.model.SubmissionResult;
+import bio.overture.aria.model.SubmissionResult.Stage;
+import bio.overture.aria.model.SubmissionRollback;
+import bio.overture.aria.model.response.AnalysisPageResponse;
 import bio.overture.aria.model.response.ServerErrorResponse;
 import bio.overture.aria.model.response.SubmitResponse;
 import bio.overture.aria.properties.AriaClientProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.handler.timeout.ReadTimeoutException;
+import java.io.IOException;
 import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.Channel;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
+import org.reactivestreams.Publisher;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.oauth2.client.AuthorizedClientServiceReactiveOAuth2AuthorizedClientManager;
-import org.springframework.security.oauth2.client.ClientCredentialsReactiveOAuth2AuthorizedClientProvider;
-import org.springframework.security.oauth2.client.InMemoryReactiveOAuth2AuthorizedClientService;
-import org.springframework.security.oauth2.client.registration.ClientRegistration;
-import org.springframework.security.oauth2.client.registration.InMemoryReactiveClientRegistrationRepository;
-import org.springframework.security.oauth2.client.web.reactive.function.client.ServerOAuth2AuthorizedClientExchangeFilterFunction;
-import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.http.codec.ClientCodecConfigurer;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.client.HttpClientRequest;
 import reactor.util.retry.Retry;
 import reactor.util.retry.RetryBackoffSpec;
 
 @Slf4j
 @Component
-public class AriaClient {
+public class AriaClient implements AutoCloseable {
+  /**
+   * What uploadAndFinalize of an AnalysisFile returns instead of score's finalize response when
+   * uploadSkipExisting is on and score already has the object.
+   */
+  public static final String ALREADY_UPLOADED = "ALREADY_UPLOADED";
 
+  private final HttpConnectors connectors;
   private final RetryBackoffSpec clientsRetrySpec;
   private final WebClient songClient;
   private final WebClient scoreClient;
+  private final WebClient objectStoreClient;
+  private final Integer uploadPartConcurrency;
+  private final Integer downloadRangeConcurrency;
+  private final Long downloadRangeSizeBytes;
+  private final Integer bulkConcurrency;
+  private final Integer streamPageSize;
+  private final Integer workflowMetadataConcurrency;
+  private final Boolean uploadSkipExisting;
+  private final RequestCompression submitCompression;
+  private final Integer workflowTransferConcurrency;
+  private final ObjectMapper jsonMapper;
+  private final AriaClientMetrics metrics;
+  private final Map<Downstream, CircuitBreaker> circuitBreakers = new EnumMap<>(Downstream.class);
+  private final Map<Downstream, RetryBudget> retryBudgets = new EnumMap<>(Downstream.class);
+  private final Map<Downstream, AdaptiveConcurrencyLimiter> concurrencyLimiters =
+      new EnumMap<>(Downstream.class);
+  private final Integer operationTimeoutSec;
+  private final Map<String, Integer> operationTimeoutsSec;
+  private final Boolean hedgingEnabled;
+  private final Double hedgingPercentile;
+  private final Duration hedgingMinDelay;
+  private final Map<String, LatencyTracker> latencyTrackers = new ConcurrentHashMap<>();
+
+  private final MetadataCache<String, Analysis> analysisCache;
+  private final MetadataCache<String, AnalysisFile> analysisFileCache;
+  private final MetadataCache<UUID, LegacyFileEntity> fileEntityCache;
+  private final Optional<ObjectDiskCache> diskCache;
+  private final Boolean presignedUrlCacheEnabled;
+  private final MetadataCache<String, ScoreFileSpec> downloadSpecCache;
 
   private static final String RESOURCE_ID_HEADER = "X-Resource-ID";
   private static final String OUATH_RESOURCE_ID = "songScoreOauth";
+  private static final int DOWNLOAD_RANGE_PREFETCH = 16;
+  private static final int FILE_BUFFER_SIZE = 64 * 1024;
+  private static final long MAPPED_CHUNK_SIZE = 4 * 1024 * 1024;
+  private static final String UPLOAD_CHECKPOINT_SUFFIX = ".aria-upload";
+  private static final String DOWNLOAD_CHECKPOINT_SUFFIX = ".aria-download";
+  private static final String DOWNLOAD_TEMP_SUFFIX = ".aria-tmp";
 
-  @Autowired
-  public AriaClient(AriaClientProperties properties) {
-    this(
-        properties.getSongRootUrl(),
-        properties.getScoreRootUrl(),
-        properties.getClientId(),
-        properties.getClientSecret(),
-        properties.getTokenUrl(),
-        properties.getRetryMaxAttempts(),
-        properties.getRetryDelaySec());
-  }
+  // operation names metrics are tagged with
+  private static final String GET_ANALYSIS = "getAnalysis";
+  private static final String STREAM_ANALYSES = "streamAnalyses";
+  private static final String SUBMIT_PAYLOAD = "submitPayload";
+  private static final String GET_ANALYSIS_FILE = "getAnalysisFileFromSong";
+  private static final String GET_FILE_ENTITY = "getFileEntityFromSong";
+  private static final String INIT_SCORE_UPLOAD = "initScoreUpload";
+  private static final String UPLOAD_AND_FINALIZE = "uploadAndFinalize";
+  private static final String PUBLISH_ANALYSIS = "publishAnalysis";
+  private static final String UNPUBLISH_ANALYSIS = "unpublishAnalysis";
+  private static final String SUPPRESS_ANALYSIS = "suppressAnalysis";
+  private static final String DOWNLOAD_OBJECT = "downloadObject";
+  private static final String IS_UPLOADED = "isUploaded";
 
   public AriaClient(
       String songRootUrl,
@@ -89,74 +177,352 @@ public class AriaClient {
       String tokenUrl,
       Integer retryMaxAttempts,
       Integer retryDelaySec) {
+    this(
+        properties(
+            songRootUrl,
+            scoreRootUrl,
+            clientId,
+            clientSecret,
+            tokenUrl,
+            retryMaxAttempts,
+            retryDelaySec));
+  }
 
-    val oauthFilter = createOauthFilter(OUATH_RESOURCE_ID, tokenUrl, clientId, clientSecret);
+  public AriaClient(AriaClientProperties properties) {
+    this(properties, null);
+  }
+
+  @Autowired
+  public AriaClient(AriaClientProperties properties, @Nullable MeterRegistry meterRegistry) {
+    val songRootUrl = properties.getSongRootUrl();
+    val scoreRootUrl = properties.getScoreRootUrl();
+
+    this.connectors = HttpConnectors.create(properties);
+
+    // one token is shared by song and score, and refreshed ahead of expiry in the background
+    val oauthFilter =
+        OAuthTokenManager.of(
+                OUATH_RESOURCE_ID,
+                properties.getTokenUrl(),
+                properties.getClientId(),
+                properties.getClientSecret(),
+                Duration.ofSeconds(properties.getTokenRefreshAheadSec()),
+                connectors.getMetadata())
+            .filter();
+    this.metrics = AriaClientMetrics.of(meterRegistry);
+
+    // each downstream fails and recovers on its own, so each gets its own breaker and budget
+    for (val target : Downstream.values()) {
+      val circuitBreaker =
+          properties.getCircuitBreakerEnabled()
+              ? CircuitBreaker.of(
+                  target,
+                  properties.getCircuitBreakerFailureThreshold(),
+                  Duration.ofSeconds(properties.getCircuitBreakerOpenSec()))
+              : CircuitBreaker.disabled(target);
+      circuitBreakers.put(target, circuitBreaker);
+      metrics.circuitBreaker(target, circuitBreaker);
+      retryBudgets.put(
+          target,
+          properties.getRetryBudgetEnabled()
+              ? RetryBudget.of(
+                  properties.getRetryBudgetRatio(), properties.getRetryBudgetMaxTokens())
+              : RetryBudget.unlimited());
+      if (properties.getConcurrencyLimiterEnabled()) {
+        // object store latency is mostly the size of the part or range being transferred
+        val concurrencyLimiter =
+            target == Downstream.OBJECT_STORE
+                ? AdaptiveConcurrencyLimiter.withoutLatencySignal(
+                    target,
+                    properties.getConcurrencyLimiterInitialLimit(),
+                    properties.getConcurrencyLimiterMinLimit(),
+                    properties.getConcurrencyLimiterMaxLimit(),
+                    properties.getConcurrencyLimiterMaxQueueSize(),
+                    properties.getConcurrencyLimiterBackoffRatio())
+                : AdaptiveConcurrencyLimiter.of(
+                    target,
+                    properties.getConcurrencyLimiterInitialLimit(),
+                    properties.getConcurrencyLimiterMinLimit(),
+                    properties.getConcurrencyLimiterMaxLimit(),
+                    properties.getConcurrencyLimiterMaxQueueSize(),
+                    properties.getConcurrencyLimiterBackoffRatio(),
+                    properties.getConcurrencyLimiterLatencyTolerance());
+        concurrencyLimiters.put(target, concurrencyLimiter);
+        metrics.concurrencyLimit(target, concurrencyLimiter);
+      }
+    }
+
+    // song and score share one mapper, so the (de)serializers it builds are cached across both
+    val baseMapper =
+        properties.getJsonBlackbirdEnabled() ? Jackson.fastMapper() : Jackson.sharedMapper();
+    this.jsonMapper =
+        properties.getAnalysisParseMode() == JsonSectionMode.EAGER
+            ? baseMapper
+            : JsonSectionDeserializer.withMode(baseMapper, properties.getAnalysisParseMode());
+    val codecMaxInMemorySize = properties.getCodecMaxInMemorySizeBytes();
+    Consumer<ClientCodecConfigurer> codecs =
+        configurer -> {
+          configurer.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(jsonMapper));
+          configurer.defaultCodecs().jackson2JsonEncoder(new Jackson2JsonEncoder(jsonMapper));
+          configurer.defaultCodecs().maxInMemorySize(codecMaxInMemorySize);
+        };
 
     songClient =
         WebClient.builder()
+            .clientConnector(connectors.getMetadata())
+            .codecs(codecs)
             .baseUrl(songRootUrl)
+            // the breaker, retry budget, concurrency limiter and metrics go inside the oauth
+            // filter, so a failing token endpoint isn't counted or timed as song or score failing.
+            // The limiter goes outside the breaker and budget, so requests it turns away are
+            // neither counted as failures of the downstream nor retried.
             .filter(oauthFilter)
+            .filter(concurrencyLimitFilter(Downstream.SONG))
+            .filter(resilienceFilter(Downstream.SONG))
+            .filter(metrics.filter(Downstream.SONG))
             .defaultHeader(RESOURCE_ID_HEADER, OUATH_RESOURCE_ID)
             .build();
 
     scoreClient =
         WebClient.builder()
+            .clientConnector(connectors.getMetadata())
+            .codecs(codecs)
             .baseUrl(scoreRootUrl)
             .filter(oauthFilter)
+            .filter(concurrencyLimitFilter(Downstream.SCORE))
+            .filter(resilienceFilter(Downstream.SCORE))
+            .filter(metrics.filter(Downstream.SCORE))
             .defaultHeader(RESOURCE_ID_HEADER, OUATH_RESOURCE_ID)
             .build();
 
+    // presigned urls are absolute and already carry their own auth
+    objectStoreClient =
+        WebClient.builder()
+            .clientConnector(connectors.getObjectStore())
+            .filter(concurrencyLimitFilter(Downstream.OBJECT_STORE))
+            .filter(resilienceFilter(Downstream.OBJECT_STORE))
+            .filter(metrics.filter(Downstream.OBJECT_STORE))
+            .build();
+
+    // Backoff doubles from retryDelaySec up to retryMaxBackoffSec, the jitter spreads clients out
+    // so they don't all come back to a recovering server at the same moment
     this.clientsRetrySpec =
-        Retry.fixedDelay(retryMaxAttempts, Duration.ofSeconds(retryDelaySec))
-            // Retry on non 5xx errors, 4xx is bad request no point retrying
-            .filter(
-                t ->
-                    t instanceof AriaClientException
-                        && ((AriaClientException) t).getStatus().is5xxServerError())
+        Retry.backoff(
+                properties.getRetryMaxAttempts(), Duration.ofSeconds(properties.getRetryDelaySec()))
+            .maxBackoff(Duration.ofSeconds(properties.getRetryMaxBackoffSec()))
+            .jitter(properties.getRetryJitterFactor())
             .onRetryExhaustedThrow(((retryBackoffSpec, retrySignal) -> retrySignal.failure()));
 
+    this.uploadPartConcurrency = properties.getUploadPartConcurrency();
+    this.downloadRangeConcurrency = properties.getDownloadRangeConcurrency();
+    this.downloadRangeSizeBytes = properties.getDownloadRangeSizeBytes();
+    this.bulkConcurrency = properties.getBulkConcurrency();
+    this.streamPageSize = properties.getStreamPageSize();
+    this.workflowMetadataConcurrency = properties.getWorkflowMetadataConcurrency();
+    this.uploadSkipExisting = properties.getUploadSkipExisting();
+    this.submitCompression =
+        properties.getRequestCompressionEnabled()
+            ? RequestCompression.of(
+                properties.getRequestCompressionEncoding(),
+                properties.getRequestCompressionMinSizeBytes())
+            : RequestCompression.disabled();
+    this.workflowTransferConcurrency = properties.getWorkflowTransferConcurrency();
+    this.operationTimeoutSec = properties.getOperationTimeoutSec();
+    this.operationTimeoutsSec = Map.copyOf(properties.getOperationTimeoutsSec());
+    this.hedgingEnabled = properties.getHedgingEnabled();
+    this.hedgingPercentile = properties.getHedgingPercentile();
+    this.hedgingMinDelay = Duration.ofMillis(properties.getHedgingMinDelayMs());
+
+    if (properties.getMetadataCacheEnabled()) {
+      val maxSize = properties.getMetadataCacheMaxSize();
+      val publishedTtl = Duration.ofSeconds(properties.getMetadataCachePublishedTtlSec());
+      val unpublishedTtl = Duration.ofSeconds(properties.getMetadataCacheUnpublishedTtlSec());
+
+      // published analyses rarely change so they are kept much longer than unpublished ones,
+      // files can still change while an analysis is unpublished, file entities never do
+      this.analysisCache =
+          MetadataCache.of(
+              maxSize,
+              analysis ->
+                  analysis.getAnalysisState() == Analysis.AnalysisState.PUBLISHED
+                      ? publishedTtl
+                      : unpublishedTtl);
+      this.analysisFileCache = MetadataCache.of(maxSize, file -> unpublishedTtl);
+      this.fileEntityCache = MetadataCache.of(maxSize, entity -> publishedTtl);
+    } else {
+      this.analysisCache = MetadataCache.disabled();
+      this.analysisFileCache = MetadataCache.disabled();
+      this.fileEntityCache = MetadataCache.disabled();
+    }
+
+    this.presignedUrlCacheEnabled = properties.getPresignedUrlCacheEnabled();
+    if (presignedUrlCacheEnabled) {
+      val safetyMargin = Duration.ofSeconds(properties.getPresignedUrlSafetyMarginSec());
+      // a download link is kept until the safety margin before its signature expires, links
+      // without a readable expiry are not kept at all
+      this.downloadSpecCache =
+          MetadataCache.of(
+              properties.getPresignedUrlCacheMaxSize(),
+              spec ->
+                  PresignedUrls.expiryOf(decodeUrl(presignedUrl(spec)))
+                      .map(expiry -> Duration.between(Instant.now(), expiry).minus(safetyMargin))
+                      .filter(ttl -> !ttl.isNegative())
+                      .orElse(Duration.ZERO));
+    } else {
+      this.downloadSpecCache = MetadataCache.disabled();
+    }
+
+    this.diskCache =
+        properties.getDiskCacheEnabled()
+            ? Optional.of(
+                ObjectDiskCache.of(
+                    Path.of(properties.getDiskCacheDir()), properties.getDiskCacheMaxSizeBytes()))
+            : Optional.empty();
+
     log.info("Initialized song score client.");
     log.info("songRootUrl - " + songRootUrl);
     log.info("scoreRootUrl - " + scoreRootUrl);
   }
 
   public Mono<Analysis> getAnalysis(String studyId, UUID analysisId) {
+    return analysisCache.get(
+        analysisKey(studyId, analysisId),
+        () ->
+            hedged(
+                GET_ANALYSIS,
+                Downstream.SONG,
+                () ->
+                    songClient
+                        .get()
+                        .uri(format("/studies/%s/analysis/%s", studyId, analysisId.toString()))
+                        .attribute(OPERATION_ATTRIBUTE, GET_ANALYSIS)
+                        .exchangeToMono(ofMonoTypeOrHandleError(Analysis.class))
+                        .map(HttpEntity::getBody)
+                        .transform(timeout(GET_ANALYSIS))
+                        .retryWhen(retrySpec(GET_ANALYSIS, Downstream.SONG))));
+  }
+
+  public Flux<BulkResult<UUID, Analysis>> getAnalyses(String studyId, Publisher<UUID> analysisIds) {
+    return getAnalyses(studyId, analysisIds, false);
+  }
+
+  public Flux<BulkResult<UUID, Analysis>> getAnalyses(
+      String studyId, Publisher<UUID> analysisIds, boolean preserveOrder) {
+    // At most bulkConcurrency lookups are in flight, and ids are only pulled from the publisher
+    // as results are requested downstream. A failed lookup becomes a failed result instead of
+    // cancelling the rest of the stream.
+    Function<UUID, Mono<BulkResult<UUID, Analysis>>> lookup =
+        analysisId ->
+            getAnalysis(studyId, analysisId)
+                .map(analysis -> BulkResult.<UUID, Analysis>success(analysisId, analysis))
+                .defaultIfEmpty(
+                    BulkResult.failure(
+                        analysisId,
+                        new AriaClientException(HttpStatus.NOT_FOUND, "Analysis not found")))
+                .onErrorResume(e -> Mono.just(BulkResult.failure(analysisId, e)));
+
+    return preserveOrder
+        ? Flux.from(analysisIds).flatMapSequential(lookup, bulkConcurrency)
+        : Flux.from(analysisIds).flatMap(lookup, bulkConcurrency);
+  }
+
+  public Flux<Analysis> streamAnalyses(String studyId, Set<Analysis.AnalysisState> states) {
+    val statesParam = states.stream().map(Enum::name).collect(joining(","));
+
+    // The total is fetched up front so every page is known. Pages are then fetched with a
+    // concurrency of two, so the next page is already on its way while the current one is being
+    // consumed, and each page is decoded an analysis at a time as its bytes arrive.
+    return countAnalyses(studyId, statesParam)
+        .flatMapMany(
+            total ->
+                Flux.range(0, (int) ((total + streamPageSize - 1) / streamPageSize))
+                    .flatMapSequential(
+                        page -> getAnalysisPage(studyId, statesParam, (long) page * streamPageSize),
+                        2,
+                        streamPageSize));
+  }
+
+  private Mono<Long> countAnalyses(String studyId, String statesParam) {
     return songClient
         .get()
-        .uri(format("/studies/%s/analysis/%s", studyId, analysisId.toString()))
-        .exchangeToMono(ofMonoTypeOrHandleError(Analysis.class))
+        .uri(analysisPageUri(studyId, statesParam, 1, 0L))
+        .attribute(OPERATION_ATTRIBUTE, STREAM_ANALYSES)
+        .exchangeToMono(ofMonoTypeOrHandleError(AnalysisPageResponse.class))
         .map(HttpEntity::getBody)
-        .retryWhen(clientsRetrySpec);
+        .map(AnalysisPageResponse::getTotalAnalyses)
+        .transform(timeout(STREAM_ANALYSES))
+        .retryWhen(retrySpec(STREAM_ANALYSES, Downstream.SONG));
   }
 
-  public Mono<SubmitResponse> submitPayload(String studyId, String payload) {
+  private Flux<Analysis> getAnalysisPage(String studyId, String statesParam, Long offset) {
     return songClient
-        .post()
-        .uri(format("/submit/%s", studyId))
-        .contentType(MediaType.APPLICATION_JSON)
-        .body(BodyInserters.fromValue(payload))
+        .get()
+        .uri(analysisPageUri(studyId, statesParam, streamPageSize, offset))
+        .attribute(OPERATION_ATTRIBUTE, STREAM_ANALYSES)
+        .exchangeToFlux(ofFluxTypeOrHandleError(DataBuffer.class))
+        .retryWhen(retrySpec(STREAM_ANALYSES, Downstream.SONG))
+        // after the retry, a body that stalls part way can't be retried from its start again
+        .transform(idleTimeout(STREAM_ANALYSES))
+        .transform(
+            body -> JsonArrayFieldDecoder.decode(body, "analyses", Analysis.class, jsonMapper));
+  }
+
+  private static String analysisPageUri(
+      String studyId, String statesParam, Integer limit, Long offset) {
+    return format(
+        "/studies/%s/analysis/paginated?analysisStates=%s&limit=%s&offset=%s",
+        studyId, statesParam, limit, offset);
+  }
+
+  public Mono<SubmitResponse> submitPayload(String studyId, String payload) {
+    return submitCompression
+        .body(
+            songClient
+                .post()
+                .uri(format("/submit/%s", studyId))
+                .attribute(OPERATION_ATTRIBUTE, SUBMIT_PAYLOAD)
+                .contentType(MediaType.APPLICATION_JSON),
+            payload)
         .exchangeToMono(ofMonoTypeOrHandleError(SubmitResponse.class))
         .map(HttpEntity::getBody)
-        .retryWhen(clientsRetrySpec);
+        .transform(timeout(SUBMIT_PAYLOAD))
+        .retryWhen(retrySpec(SUBMIT_PAYLOAD, Downstream.SONG))
+        // drop anything cached for the analysis while it didn't exist or wasn't complete yet
+        .doOnNext(res -> invalidateAnalysis(studyId, UUID.fromString(res.getAnalysisId())));
   }
 
   public Mono<AnalysisFile> getAnalysisFileFromSong(String studyId, UUID analysisId) {
-    return songClient
-        .get()
-        .uri(format("/studies/%s/analysis/%s/files", studyId, analysisId.toString()))
-        // endpoint returns array but, we expect only one file to be uploaded in each analysis
-        .exchangeToFlux(ofFluxTypeOrHandleError(AnalysisFile.class))
-        .next()
-        .retryWhen(clientsRetrySpec);
+    return analysisFileCache.get(
+        analysisKey(studyId, analysisId),
+        () ->
+            songClient
+                .get()
+                .uri(format("/studies/%s/analysis/%s/files", studyId, analysisId.toString()))
+                .attribute(OPERATION_ATTRIBUTE, GET_ANALYSIS_FILE)
+                // endpoint returns array but, we expect only one file to be uploaded in each
+                // analysis
+                .exchangeToFlux(ofFluxTypeOrHandleError(AnalysisFile.class))
+                .next()
+                .transform(timeout(GET_ANALYSIS_FILE))
+                .retryWhen(retrySpec(GET_ANALYSIS_FILE, Downstream.SONG)));
   }
 
   public Mono<LegacyFileEntity> getFileEntityFromSong(UUID objectId) {
-    return songClient
-        .get()
-        .uri(format("/entities/%s", objectId.toString()))
-        .exchangeToMono(ofMonoTypeOrHandleError(LegacyFileEntity.class))
-        .map(HttpEntity::getBody)
-        .retryWhen(clientsRetrySpec);
+    return fileEntityCache.get(
+        objectId,
+        () ->
+            hedged(
+                GET_FILE_ENTITY,
+                Downstream.SONG,
+                () ->
+                    songClient
+                        .get()
+                        .uri(format("/entities/%s", objectId.toString()))
+                        .attribute(OPERATION_ATTRIBUTE, GET_FILE_ENTITY)
+                        .exchangeToMono(ofMonoTypeOrHandleError(LegacyFileEntity.class))
+                        .map(HttpEntity::getBody)
+                        .transform(timeout(GET_FILE_ENTITY))
+                        .retryWhen(retrySpec(GET_FILE_ENTITY, Downstream.SONG))));
   }
 
   public Mono<ScoreFileSpec> initScoreUpload(AnalysisFile analysisFile, String md5Sum) {
@@ -168,53 +534,374 @@ public class AriaClient {
     return scoreClient
         .post()
         .uri(uri)
+        .attribute(OPERATION_ATTRIBUTE, INIT_SCORE_UPLOAD)
         .exchangeToMono(ofMonoTypeOrHandleError(ScoreFileSpec.class))
         .map(HttpEntity::getBody)
-        .retryWhen(clientsRetrySpec);
+        .transform(timeout(INIT_SCORE_UPLOAD))
+        .retryWhen(retrySpec(INIT_SCORE_UPLOAD, Downstream.SCORE));
   }
 
   public Mono<String> uploadAndFinalize(
       ScoreFileSpec scoreFileSpec, String fileContent, String md5) {
-    // we expect only one file part
-    val presignedUrl = decodeUrl(scoreFileSpec.getParts().get(0).getUrl());
+    val content = fileContent.getBytes(StandardCharsets.UTF_8);
+    val singlePart = scoreFileSpec.getParts().size() == 1;
 
-    return WebClient.create(presignedUrl)
+    return uploadParts(
+            scoreFileSpec,
+            scoreFileSpec.getParts(),
+            part -> bytesPart(content, part),
+            // a single part covers the whole object, so its md5 is the one we were given
+            part -> singlePart ? md5 : md5Hex(content, part),
+            uploadPartConcurrency)
+        .then(finalizeScoreUpload(scoreFileSpec));
+  }
+
+  public Mono<String> uploadAndFinalize(ScoreFileSpec scoreFileSpec, FileChannel channel) {
+    // parts are memory mapped straight from the channel, nothing is copied onto the heap
+    return uploadDigestedParts(
+            scoreFileSpec, scoreFileSpec.getParts(), part -> mappedPart(channel, part))
+        .then(finalizeScoreUpload(scoreFileSpec));
+  }
+
+  public Mono<String> uploadAndFinalize(ScoreFileSpec scoreFileSpec, Flux<DataBuffer> content) {
+    // The content can only be subscribed to once, so it is cut into the parts of the spec as it
+    // streams through and the parts go up one after the other. For the same reason a failed
+    // part can't be retried, only its finalize call is.
+    val partsInOrder = partsInOrder(scoreFileSpec);
+    val partSizes = partsInOrder.stream().map(ScoreFileSpec.Part::getPartSize).collect(toList());
+    val partDigest = Md5.newDigest();
+
+    return PartSlicer.slice(content, partSizes)
+        .index()
+        .concatMap(
+            indexedPart -> {
+              val body = indexedPart.getT2();
+              if (indexedPart.getT1() >= partsInOrder.size()) {
+                // trailing empty window after the last part
+                return body.doOnNext(DataBufferUtils::release).then();
+              }
+              val part = partsInOrder.get(indexedPart.getT1().intValue());
+              return putPart(part, digesting(body, partDigest::reset, partDigest::update))
+                  .flatMap(
+                      eTag ->
+                          finalizeScoreUploadPart(
+                              scoreFileSpec, part.getPartNumber(), Md5.hex(partDigest), eTag));
+            })
+        .then(finalizeScoreUpload(scoreFileSpec));
+  }
+
+  public Mono<String> uploadAndFinalize(AnalysisFile analysisFile, Path file, String md5) {
+    return resumeOrStartUpload(
+        analysisFile,
+        file,
+        md5,
+        (checkpoint, checkpointFile) -> uploadFromCheckpoint(checkpoint, file, checkpointFile));
+  }
+
+  public Mono<String> uploadAndFinalize(AnalysisFile analysisFile, Path file) {
+    // the file is hashed while it uploads and checked against the md5 song has for it before
+    // the upload is finalized, so there is no need to read it up front just to compute its md5
+    val expectedMd5 = analysisFile.getFileMd5sum();
+
+    return resumeOrStartUpload(
+        analysisFile,
+        file,
+        expectedMd5,
+        (checkpoint, checkpointFile) ->
+            verifiedUploadFromCheckpoint(checkpoint, file, checkpointFile, expectedMd5));
+  }
+
+  public Mono<Boolean> isUploaded(AnalysisFile analysisFile) {
+    return isUploaded(
+        analysisFile.getObjectId(), analysisFile.getFileMd5sum(), analysisFile.getFileSize());
+  }
+
+  public Flux<AnalysisFile> filterNotUploaded(Publisher<AnalysisFile> analysisFiles) {
+    // Checks up to bulkConcurrency files at a time. A file whose check fails is kept, at worst it
+    // is uploaded again.
+    return Flux.from(analysisFiles)
+        .flatMap(
+            analysisFile ->
+                isUploaded(analysisFile)
+                    .onErrorReturn(false)
+                    .filter(uploaded -> !uploaded)
+                    .map(uploaded -> analysisFile),
+            bulkConcurrency);
+  }
+
+  private Mono<Boolean> isUploaded(String objectId, String md5, Long size) {
+    // score already has the object when its md5 and size match the ones expected, an object score
+    // doesn't know is simply not uploaded yet
+    return getDownloadSpec(objectId, IS_UPLOADED)
+        .map(
+            spec ->
+                md5 != null
+                    && md5.equalsIgnoreCase(spec.getObjectMd5())
+                    && size != null
+                    && size == objectSize(spec))
+        .defaultIfEmpty(false)
+        .onErrorResume(AriaClient::isUnknownUpload, e -> Mono.just(false));
+  }
+
+  public Mono<String> uploadAndFinalize(ScoreFileSpec scoreFileSpec, Path file) {
+    val checkpointFile = uploadCheckpointOf(file);
+
+    return Mono.fromCallable(checkpointFile::read)
+        .subscribeOn(Schedulers.boundedElastic())
+        .map(
+            checkpoint ->
+                checkpoint
+                    // only parts of this exact upload can be skipped
+                    .filter(c -> c.getSpec().getUploadId().equals(scoreFileSpec.getUploadId()))
+                    .orElseGet(() -> new UploadCheckpoint(scoreFileSpec)))
+        .flatMap(checkpoint -> uploadFromCheckpoint(checkpoint, file, checkpointFile));
+  }
+
+  private Mono<String> resumeOrStartUpload(
+      AnalysisFile analysisFile,
+      Path file,
+      String md5,
+      BiFunction<UploadCheckpoint, CheckpointFile<UploadCheckpoint>, Mono<String>> uploader) {
+    val checkpointFile = uploadCheckpointOf(file);
+    val freshUpload =
+        initScoreUpload(analysisFile, md5)
+            .flatMap(spec -> uploader.apply(new UploadCheckpoint(spec), checkpointFile));
+
+    if (uploadSkipExisting) {
+      // like filterNotUploaded, a failed check falls through to uploading the file
+      return isUploaded(analysisFile.getObjectId(), md5, analysisFile.getFileSize())
+          .onErrorReturn(false)
+          .flatMap(
+              uploaded -> {
+                if (uploaded) {
+                  log.info(
+                      "Skipping upload of {}, score already has it", analysisFile.getObjectId());
+                  return Mono.just(ALREADY_UPLOADED);
+                }
+                return resumeOrStartUpload(checkpointFile, analysisFile, freshUpload, uploader);
+              });
+    }
+    return resumeOrStartUpload(checkpointFile, analysisFile, freshUpload, uploader);
+  }
+
+  private Mono<String> resumeOrStartUpload(
+      CheckpointFile<UploadCheckpoint> checkpointFile,
+      AnalysisFile analysisFile,
+      Mono<String> freshUpload,
+      BiFunction<UploadCheckpoint, CheckpointFile<UploadCheckpoint>, Mono<String>> uploader) {
+    return Mono.fromCallable(checkpointFile::read)
+        .subscribeOn(Schedulers.boundedElastic())
+        .flatMap(
+            checkpoint ->
+                checkpoint
+                    .filter(c -> c.getSpec().getObjectId().equals(analysisFile.getObjectId()))
+                    .map(
+                        c -> {
+                          if (hasExpiredPartUrls(c)) {
+                            log.info(
+                                "Restarting upload of {}, the part urls in {} have expired",
+                                analysisFile.getObjectId(),
+                                checkpointFile.getPath());
+                            return checkpointFile.delete().then(freshUpload);
+                          }
+                          log.info(
+                              "Resuming upload of {} from {}",
+                              analysisFile.getObjectId(),
+                              checkpointFile.getPath());
+                          return uploader
+                              .apply(c, checkpointFile)
+                              // score no longer knows the checkpointed upload, or the object
+                              // store no longer accepts its part urls, start over
+                              .onErrorResume(
+                                  e -> isUnknownUpload(e) || isRejectedLink(e),
+                                  e -> checkpointFile.delete().then(freshUpload));
+                        })
+                    .orElse(freshUpload));
+  }
+
+  private static boolean hasExpiredPartUrls(UploadCheckpoint checkpoint) {
+    // urls without a readable expiry are tried, the object store rejects them if they expired
+    val now = Instant.now();
+    return checkpoint.getSpec().getParts().stream()
+        .filter(part -> !checkpoint.getCompletedParts().contains(part.getPartNumber()))
+        .map(part -> PresignedUrls.expiryOf(decodeUrl(part.getUrl())))
+        .anyMatch(expiry -> expiry.map(now::isAfter).orElse(false));
+  }
+
+  private Mono<String> uploadFromCheckpoint(
+      UploadCheckpoint checkpoint, Path file, CheckpointFile<UploadCheckpoint> checkpointFile) {
+    val spec = checkpoint.getSpec();
+    val pendingParts =
+        spec.getParts().stream()
+            .filter(part -> !checkpoint.getCompletedParts().contains(part.getPartNumber()))
+            .collect(toList());
+
+    return checkpointFile
+        .save(checkpoint)
+        .thenMany(uploadDigestedParts(spec, pendingParts, part -> filePart(file, part)))
+        .concatMap(partNumber -> completePart(checkpoint, checkpointFile, partNumber))
+        .then(finalizeScoreUpload(spec))
+        .flatMap(res -> checkpointFile.delete().thenReturn(res));
+  }
+
+  private Mono<String> verifiedUploadFromCheckpoint(
+      UploadCheckpoint checkpoint,
+      Path file,
+      CheckpointFile<UploadCheckpoint> checkpointFile,
+      String expectedMd5) {
+    val spec = checkpoint.getSpec();
+    val pendingParts =
+        spec.getParts().stream()
+            .filter(part -> !checkpoint.getCompletedParts().contains(part.getPartNumber()))
+            .collect(toList());
+    val upload =
+        checkpointFile
+            .save(checkpoint)
+            .thenMany(uploadDigestedParts(spec, pendingParts, part -> filePart(file, part)))
+            .concatMap(partNumber -> completePart(checkpoint, checkpointFile, partNumber))
+            .then();
+
+    // The object md5 needs the bytes in order while the parts go up out of order, so it comes
+    // from a separate sequential read of the file that runs alongside the upload. It covers the
+    // parts of a resumed upload that are already in score as well.
+    return Mono.zip(upload.thenReturn(spec), fileMd5(file))
+        .flatMap(
+            uploaded -> {
+              val actualMd5 = uploaded.getT2();
+              if (actualMd5.equalsIgnoreCase(expectedMd5)) {
+                return finalizeScoreUpload(spec);
+              }
+              // the parts in score are not the file song expects, don't resume from them
+              return checkpointFile
+                  .delete()
+                  .then(
+                      Mono.error(
+                          new AriaClientException(
+                              HttpStatus.PRECONDITION_FAILED,
+                              format(
+                                  "Md5 mismatch for object %s, expected %s but file has %s",
+                                  spec.getObjectId(), expectedMd5, actualMd5))));
+            })
+        .flatMap(res -> checkpointFile.delete().thenReturn(res));
+  }
+
+  private Mono<Integer> completePart(
+      UploadCheckpoint checkpoint,
+      CheckpointFile<UploadCheckpoint> checkpointFile,
+      Integer partNumber) {
+    checkpoint.getCompletedParts().add(partNumber);
+    return checkpointFile.save(checkpoint).thenReturn(partNumber);
+  }
+
+  private Flux<Integer> uploadDigestedParts(
+      ScoreFileSpec scoreFileSpec,
+      List<ScoreFileSpec.Part> parts,
+      Function<ScoreFileSpec.Part, Flux<DataBuffer>> partReader) {
+    // part md5s are computed while the part streams to the object store
+    val partDigests = new ConcurrentHashMap<Integer, MessageDigest>();
+
+    return uploadParts(
+        scoreFileSpec,
+        parts,
+        part -> {
+          val digest = partDigests.computeIfAbsent(part.getPartNumber(), n -> Md5.newDigest());
+          return digesting(partReader.apply(part), digest::reset, digest::update);
+        },
+        part -> Md5.hex(partDigests.get(part.getPartNumber())),
+        uploadPartConcurrency);
+  }
+
+  private Flux<Integer> uploadParts(
+      ScoreFileSpec scoreFileSpec,
+      List<ScoreFileSpec.Part> parts,
+      Function<ScoreFileSpec.Part, Flux<DataBuffer>> partBody,
+      Function<ScoreFileSpec.Part, String> partMd5,
+      int concurrency) {
+    // Every part is uploaded to its own presigned url (at most concurrency at a time) and
+    // finalized in score as soon as its upload completes. The upload and the finalize are
+    // retried per part, so one failed part doesn't restart the whole object.
+    // Emits the part numbers that have been uploaded and finalized.
+    return Flux.fromIterable(parts)
+        .flatMap(
+            part ->
+                uploadPart(part, partBody.apply(part))
+                    .flatMap(
+                        eTag ->
+                            finalizeScoreUploadPart(
+                                scoreFileSpec, part.getPartNumber(), partMd5.apply(part), eTag))
+                    .thenReturn(part.getPartNumber()),
+            concurrency);
+  }
+
+  private Mono<String> uploadPart(ScoreFileSpec.Part part, Flux<DataBuffer> body) {
+    return putPart(part, body).retryWhen(retrySpec(UPLOAD_AND_FINALIZE, Downstream.OBJECT_STORE));
+  }
+
+  private Mono<String> putPart(ScoreFileSpec.Part part, Flux<DataBuffer> body) {
+    val presignedUrl = decodeUrl(part.getUrl());
+    val bytesUploaded = metrics.bytesUploaded(UPLOAD_AND_FINALIZE, Downstream.OBJECT_STORE);
+    val timeout = timeoutOf(UPLOAD_AND_FINALIZE);
+
+    // A part can take as long as it needs to go up on a slow link. It only fails when no bytes
+    // are sent for the timeout, or when the response doesn't come within it once they all are.
+    return objectStoreClient
         .put()
+        .uri(presignedUrl)
+        .attribute(OPERATION_ATTRIBUTE, UPLOAD_AND_FINALIZE)
         .contentType(MediaType.TEXT_PLAIN)
-        .contentLength(fileContent.length())
-        .body(BodyInserters.fromValue(fileContent))
-        .exchangeToMono(ofBodilessTypeOrHandleError())
-        .map(res -> res.getHeaders().getETag().replace("\"", ""))
-        .flatMap(eTag -> finalizeScoreUpload(scoreFileSpec, md5, eTag))
-        .retryWhen(clientsRetrySpec);
+        .contentLength(part.getPartSize())
+        .httpRequest(
+            request -> {
+              if (timeout != null) {
+                request.<HttpClientRequest>getNativeRequest().responseTimeout(timeout);
+              }
+            })
+        .body(
+            BodyInserters.fromDataBuffers(
+                body.doOnNext(buffer -> bytesUploaded.increment(buffer.readableByteCount()))
+                    .transform(idleTimeout(UPLOAD_AND_FINALIZE))))
+        .exchangeToMono(ofObjectStoreBodilessOrHandleError())
+        // both timeouts fail the request, they are surfaced as the 504 they are so they're retried
+        .onErrorMap(
+            WebClientRequestException.class,
+            e ->
+                e.getCause() instanceof ReadTimeoutException
+                    ? timedOut(UPLOAD_AND_FINALIZE, timeout)
+                    : e.getCause() instanceof AriaClientException ? e.getCause() : e)
+        .map(res -> res.getHeaders().getETag().replace("\"", ""));
   }
 
-  private Mono<String> finalizeScoreUpload(ScoreFileSpec scoreFileSpec, String md5, String etag) {
-    val objectId = scoreFileSpec.getObjectId();
-    val uploadId = scoreFileSpec.getUploadId();
-
+  private Mono<Void> finalizeScoreUploadPart(
+      ScoreFileSpec scoreFileSpec, Integer partNumber, String md5, String etag) {
     val finalizePartUri =
         format(
-            "/upload/%s/parts?uploadId=%s&etag=%s&md5=%s&partNumber=1",
-            objectId, uploadId, etag, md5);
-    val finalizeUploadPart =
-        scoreClient
-            .post()
-            .uri(finalizePartUri)
-            .exchangeToMono(ofBodilessTypeOrHandleError())
-            .retryWhen(clientsRetrySpec);
-
-    val finalizeUploadUri = format("/upload/%s?uploadId=%s", objectId, uploadId);
-    val finalizeUpload =
-        scoreClient
-            .post()
-            .uri(finalizeUploadUri)
-            .exchangeToMono(ofBodilessTypeOrHandleError())
-            .retryWhen(clientsRetrySpec);
-
-    // The finalize step in score requires finalizing each file part and then the whole upload
-    // we only have one file part, so we finalize the part and upload one after the other
-    return finalizeUploadPart.then(finalizeUpload).map(Objects::toString);
+            "/upload/%s/parts?uploadId=%s&etag=%s&md5=%s&partNumber=%s",
+            scoreFileSpec.getObjectId(), scoreFileSpec.getUploadId(), etag, md5, partNumber);
+
+    return scoreClient
+        .post()
+        .uri(finalizePartUri)
+        .attribute(OPERATION_ATTRIBUTE, UPLOAD_AND_FINALIZE)
+        .exchangeToMono(ofBodilessTypeOrHandleError())
+        .transform(timeout(UPLOAD_AND_FINALIZE))
+        .retryWhen(retrySpec(UPLOAD_AND_FINALIZE, Downstream.SCORE))
+        .then();
+  }
+
+  private Mono<String> finalizeScoreUpload(ScoreFileSpec scoreFileSpec) {
+    // The finalize step in score requires finalizing each file part and then the whole upload,
+    // parts are finalized as they are uploaded so all that is left is the upload itself
+    val finalizeUploadUri =
+        format("/upload/%s?uploadId=%s", scoreFileSpec.getObjectId(), scoreFileSpec.getUploadId());
+
+    return scoreClient
+        .post()
+        .uri(finalizeUploadUri)
+        .attribute(OPERATION_ATTRIBUTE, UPLOAD_AND_FINALIZE)
+        .exchangeToMono(ofBodilessTypeOrHandleError())
+        .map(Objects::toString)
+        .transform(timeout(UPLOAD_AND_FINALIZE))
+        .retryWhen(retrySpec(UPLOAD_AND_FINALIZE, Downstream.SCORE));
   }
 
   public Mono<String> publishAnalysis(String studyId, UUID analysisId) {
@@ -222,32 +909,714 @@ public class AriaClient {
         .put()
         .uri(
             format("/studies/%s/analysis/publish/%s?ignoreUndefinedMd5=false", studyId, analysisId))
+        .attribute(OPERATION_ATTRIBUTE, PUBLISH_ANALYSIS)
+        .exchangeToMono(ofBodilessTypeOrHandleError())
+        .map(Objects::toString)
+        .transform(timeout(PUBLISH_ANALYSIS))
+        .retryWhen(retrySpec(PUBLISH_ANALYSIS, Downstream.SONG))
+        .doFinally(signal -> invalidateAnalysis(studyId, analysisId));
+  }
+
+  public Mono<String> unpublishAnalysis(String studyId, UUID analysisId) {
+    return songClient
+        .put()
+        .uri(format("/studies/%s/analysis/unpublish/%s", studyId, analysisId))
+        .attribute(OPERATION_ATTRIBUTE, UNPUBLISH_ANALYSIS)
+        .exchangeToMono(ofBodilessTypeOrHandleError())
+        .map(Objects::toString)
+        .transform(timeout(UNPUBLISH_ANALYSIS))
+        .retryWhen(retrySpec(UNPUBLISH_ANALYSIS, Downstream.SONG))
+        .doFinally(signal -> invalidateAnalysis(studyId, analysisId));
+  }
+
+  public Mono<String> suppressAnalysis(String studyId, UUID analysisId) {
+    return songClient
+        .put()
+        .uri(format("/studies/%s/analysis/suppress/%s", studyId, analysisId))
+        .attribute(OPERATION_ATTRIBUTE, SUPPRESS_ANALYSIS)
         .exchangeToMono(ofBodilessTypeOrHandleError())
         .map(Objects::toString)
-        .retryWhen(clientsRetrySpec);
+        .transform(timeout(SUPPRESS_ANALYSIS))
+        .retryWhen(retrySpec(SUPPRESS_ANALYSIS, Downstream.SONG))
+        .doFinally(signal -> invalidateAnalysis(studyId, analysisId));
+  }
+
+  public Flux<SubmissionResult> submitAnalyses(Publisher<AnalysisSubmission> submissions) {
+    return submitAnalyses(submissions, SubmissionRollback.NONE);
+  }
+
+  public Flux<SubmissionResult> submitAnalyses(
+      Publisher<AnalysisSubmission> submissions, SubmissionRollback rollback) {
+    // Every submission goes through submit, get file, upload and publish. Each stage has its own
+    // concurrency, so while some analyses are uploading the next ones are already being submitted
+    // and earlier ones published. Metadata stages are short round trips and run many at a time,
+    // uploads are limited to what the bandwidth can take. A submission that fails a stage skips
+    // the rest and is rolled back if asked to.
+    return Flux.from(submissions)
+        .flatMap(this::submitAndGetFile, workflowMetadataConcurrency)
+        .flatMap(
+            result -> result.isSuccess() ? uploadSubmission(result) : Mono.just(result),
+            workflowTransferConcurrency)
+        .flatMap(
+            result -> result.isSuccess() ? publishSubmission(result) : Mono.just(result),
+            workflowMetadataConcurrency)
+        .flatMap(
+            result -> result.isSuccess() ? Mono.just(result) : rollbackSubmission(result, rollback),
+            workflowMetadataConcurrency);
+  }
+
+  private Mono<SubmissionResult> submitAndGetFile(AnalysisSubmission submission) {
+    val studyId = submission.getStudyId();
+
+    return submitPayload(studyId, submission.getPayload())
+        .map(SubmitResponse::getAnalysisId)
+        .flatMap(
+            analysisId ->
+                getAnalysisFileFromSong(studyId, UUID.fromString(analysisId))
+                    .switchIfEmpty(
+                        Mono.error(
+                            new AriaClientException(
+                                HttpStatus.NOT_FOUND, "Analysis has no file to upload")))
+                    .map(file -> SubmissionResult.success(submission, analysisId, file))
+                    .onErrorResume(
+                        e ->
+                            Mono.just(
+                                SubmissionResult.failure(
+                                    submission, analysisId, null, Stage.GET_FILE, e))))
+        .onErrorResume(
+            e -> Mono.just(SubmissionResult.failure(submission, null, null, Stage.SUBMIT, e)));
+  }
+
+  private Mono<SubmissionResult> uploadSubmission(SubmissionResult result) {
+    // the file is checked against the md5 song has for it while it uploads
+    return uploadAndFinalize(result.getAnalysisFile(), result.getSubmission().getFile())
+        .thenReturn(result)
+        .onErrorResume(e -> Mono.just(failedAt(result, Stage.UPLOAD, e)));
+  }
+
+  private Mono<SubmissionResult> publishSubmission(SubmissionResult result) {
+    return publishAnalysis(
+            result.getSubmission().getStudyId(), UUID.fromString(result.getAnalysisId()))
+        .thenReturn(result)
+        .onErrorResume(e -> Mono.just(failedAt(result, Stage.PUBLISH, e)));
+  }
+
+  private Mono<SubmissionResult> rollbackSubmission(
+      SubmissionResult result, SubmissionRollback rollback) {
+    if (rollback == SubmissionRollback.NONE || result.getAnalysisId() == null) {
+      return Mono.just(result);
+    }
+    val studyId = result.getSubmission().getStudyId();
+    val analysisId = UUID.fromString(result.getAnalysisId());
+    val rolledBack =
+        rollback == SubmissionRollback.SUPPRESS
+            ? suppressAnalysis(studyId, analysisId)
+            : unpublishAnalysis(studyId, analysisId);
+
+    return rolledBack
+        .thenReturn(result.withRolledBack(true))
+        .onErrorResume(
+            e -> {
+              log.error("Failed to roll back analysis {}: {}", analysisId, e.toString());
+              return Mono.just(result);
+            });
+  }
+
+  private static SubmissionResult failedAt(SubmissionResult result, Stage stage, Throwable e) {
+    return SubmissionResult.failure(
+        result.getSubmission(), result.getAnalysisId(), result.getAnalysisFile(), stage, e);
+  }
+
+  private void invalidateAnalysis(String studyId, UUID analysisId) {
+    analysisCache.invalidate(analysisKey(studyId, analysisId));
+    analysisFileCache.invalidate(analysisKey(studyId, analysisId));
+  }
+
+  private static String analysisKey(String studyId, UUID analysisId) {
+    return studyId + "/" + analysisId;
   }
 
   public Flux<DataBuffer> downloadObject(String objectId) {
-    // log and retry for this function is handled by the two chained funcs
-    return getFileLink(objectId).flatMapMany(this::downloadFromS3);
+    if (diskCache.isEmpty()) {
+      return fetchObject(objectId);
+    }
+    // a hit needs nothing from song, a miss needs the md5 song has to verify the download with
+    Supplier<Flux<DataBuffer>> miss =
+        () -> getAnalysisFileOfObject(objectId).flatMapMany(this::downloadObject);
+    return diskCache
+        .get()
+        .find(objectId)
+        .map(entry -> readEntry(entry).onErrorResume(NoSuchFileException.class, e -> miss.get()))
+        .switchIfEmpty(Mono.fromSupplier(miss))
+        .flatMapMany(Function.identity());
   }
 
-  private Mono<String> getFileLink(String objectId) {
-    return scoreClient
+  private Flux<DataBuffer> downloadObject(AnalysisFile analysisFile) {
+    // without an md5 a download can't be verified, so it isn't cached either
+    if (diskCache.isEmpty() || analysisFile.getFileMd5sum() == null) {
+      return fetchObject(analysisFile.getObjectId());
+    }
+    // A hit is read straight from disk, a miss is downloaded and verified into the cache first.
+    // An entry another process evicts between the two is loaded again.
+    return diskCache
         .get()
-        .uri(format("/download/%s?offset=0&length=-1&external=true", objectId))
-        .exchangeToMono(ofMonoTypeOrHandleError(ScoreFileSpec.class))
-        .map(HttpEntity::getBody)
-        // we request length = -1 which returns one file part
-        .map(spec -> spec.getParts().get(0).getUrl())
-        .retryWhen(clientsRetrySpec);
+        .get(
+            analysisFile.getObjectId(),
+            analysisFile.getFileMd5sum(),
+            entry ->
+                writeVerified(analysisFile, entry, fetchObject(analysisFile.getObjectId())).then())
+        .flatMapMany(AriaClient::readEntry)
+        .retryWhen(Retry.max(1).filter(NoSuchFileException.class::isInstance));
+  }
+
+  private static Flux<DataBuffer> readEntry(Path entry) {
+    return DataBufferUtils.read(entry, DefaultDataBufferFactory.sharedInstance, FILE_BUFFER_SIZE);
+  }
+
+  private Flux<DataBuffer> fetchObject(String objectId) {
+    // log and retry for this function is handled by the chained funcs
+    if (downloadRangeConcurrency <= 1) {
+      return getFileLink(objectId)
+          .flatMapMany(url -> downloadFromS3(objectId, url, this::downloadFromS3));
+    }
+
+    // ranges are fetched concurrently but emitted in order, flatMapSequential only queues a
+    // bounded number of buffers per range that is ahead of the one currently being emitted
+    return getDownloadSpec(objectId)
+        .flatMapMany(
+            spec ->
+                Flux.fromIterable(ByteRange.split(objectSize(spec), downloadRangeSizeBytes))
+                    .flatMapSequential(
+                        range ->
+                            downloadFromS3(
+                                objectId, presignedUrl(spec), url -> downloadFromS3(url, range)),
+                        downloadRangeConcurrency,
+                        DOWNLOAD_RANGE_PREFETCH))
+        .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+  }
+
+  /** The same as {@link #downloadToPath(String, Path)}, resumed and verified. */
+  public Mono<Path> downloadObject(String objectId, Path file) {
+    return downloadToPath(objectId, file);
+  }
+
+  private Mono<Void> downloadToFile(
+      String presignedUrl,
+      Path file,
+      Optional<DownloadCheckpoint> resumed,
+      DownloadCheckpoint fresh,
+      CheckpointFile<DownloadCheckpoint> checkpointFile) {
+    val checkpoint = resumed.orElse(fresh);
+    val pendingRanges =
+        ByteRange.split(checkpoint.getObjectSize(), checkpoint.getRangeSizeBytes()).stream()
+            .filter(range -> !checkpoint.getCompletedRanges().contains(range.getStart()))
+            .collect(toList());
+    // a resumed file keeps the ranges already written to it, a fresh one starts empty
+    val openOptions =
+        resumed.isPresent()
+            ? new OpenOption[] {StandardOpenOption.WRITE}
+            : new OpenOption[] {
+              StandardOpenOption.WRITE,
+              StandardOpenOption.CREATE,
+              StandardOpenOption.TRUNCATE_EXISTING
+            };
+    resumed.ifPresent(
+        c ->
+            log.info("Resuming download of {} from {}", c.getObjectId(), checkpointFile.getPath()));
+
+    // every range is written straight to its own position in the file, so they can be
+    // fetched and written in any order
+    return checkpointFile
+        .save(checkpoint)
+        .then(
+            Mono.using(
+                () -> AsynchronousFileChannel.open(file, openOptions),
+                channel ->
+                    Flux.fromIterable(pendingRanges)
+                        .flatMap(
+                            range ->
+                                DataBufferUtils.write(
+                                        downloadFromS3(
+                                            checkpoint.getObjectId(),
+                                            presignedUrl,
+                                            url -> downloadFromS3(url, range)),
+                                        channel,
+                                        range.getStart())
+                                    .map(DataBufferUtils::release)
+                                    .then()
+                                    .thenReturn(range.getStart()),
+                            Math.max(downloadRangeConcurrency, 1))
+                        .concatMap(
+                            start -> {
+                              checkpoint.getCompletedRanges().add(start);
+                              return checkpointFile.save(checkpoint);
+                            })
+                        .then(),
+                AriaClient::closeChannel))
+        .then(checkpointFile.delete());
+  }
+
+  public Mono<Path> downloadToPath(String objectId, Path file) {
+    return getAnalysisFileOfObject(objectId)
+        .flatMap(analysisFile -> downloadToPath(analysisFile, file));
+  }
+
+  public Mono<Path> downloadToPath(AnalysisFile analysisFile, Path file) {
+    if (diskCache.isPresent()) {
+      // the object is copied out of the cache, which only holds verified objects
+      return writeVerified(analysisFile, file, downloadObject(analysisFile));
+    }
+
+    // Ranges are written into a partial file next to the target, with a checkpoint so an
+    // interrupted download resumes from the ranges it already has. Once complete the partial file
+    // is read once more for its md5, and only moved over the target when that matches the md5
+    // song has, so the target is either the complete, verified object or left as it was.
+    val objectId = analysisFile.getObjectId();
+    val expectedMd5 = analysisFile.getFileMd5sum();
+    val partialFile = file.resolveSibling(file.getFileName() + DOWNLOAD_TEMP_SUFFIX);
+    val checkpointFile = downloadCheckpointOf(file);
+
+    return getDownloadSpec(objectId)
+        .flatMap(
+            spec ->
+                Mono.fromCallable(checkpointFile::read)
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .flatMap(
+                        checkpoint ->
+                            downloadToFile(
+                                presignedUrl(spec),
+                                partialFile,
+                                checkpoint.filter(
+                                    c ->
+                                        Files.exists(partialFile)
+                                            && c.matches(
+                                                objectId,
+                                                objectSize(spec),
+                                                downloadRangeSizeBytes)),
+                                new DownloadCheckpoint(
+                                    objectId, objectSize(spec), downloadRangeSizeBytes),
+                                checkpointFile)))
+        .then(fileMd5(partialFile))
+        .flatMap(
+            actualMd5 -> {
+              if (actualMd5.equalsIgnoreCase(expectedMd5)) {
+                return Mono.fromCallable(
+                        () ->
+                            Files.move(
+                                partialFile,
+                                file,
+                                StandardCopyOption.ATOMIC_MOVE,
+                                StandardCopyOption.REPLACE_EXISTING))
+                    .subscribeOn(Schedulers.boundedElastic());
+              }
+              return Mono.fromCallable(() -> Files.deleteIfExists(partialFile))
+                  .subscribeOn(Schedulers.boundedElastic())
+                  .then(
+                      Mono.error(
+                          new AriaClientException(
+                              HttpStatus.PRECONDITION_FAILED,
+                              format(
+                                  "Md5 mismatch for object %s, expected %s but download has %s",
+                                  objectId, expectedMd5, actualMd5))));
+            })
+        .thenReturn(file);
+  }
+
+  /** Closes the pooled connections of the client, once it is no longer used. */
+  @Override
+  public void close() {
+    connectors.close();
+  }
+
+  private Mono<AnalysisFile> getAnalysisFileOfObject(String objectId) {
+    // song knows the md5 of the object from the analysis it belongs to
+    return getFileEntityFromSong(UUID.fromString(objectId))
+        .flatMap(entity -> getAnalysis(entity.getStudyId(), entity.getAnalysisId()))
+        .flatMapIterable(analysis -> Optional.ofNullable(analysis.getFiles()).orElse(List.of()))
+        .filter(analysisFile -> objectId.equals(analysisFile.getObjectId()))
+        .next()
+        .switchIfEmpty(
+            Mono.error(
+                new AriaClientException(
+                    HttpStatus.NOT_FOUND, format("Object %s not found in song", objectId))));
+  }
+
+  private Mono<Path> writeVerified(AnalysisFile analysisFile, Path file, Flux<DataBuffer> body) {
+    // The object is written to a temp file next to the target while its md5 is computed from the
+    // same bytes. Only once that md5 matches the one song has is the temp file moved over the
+    // target, so the target is either the complete, verified object or left as it was.
+    return Mono.usingWhen(
+            Mono.fromCallable(
+                    () ->
+                        Files.createTempFile(
+                            file.toAbsolutePath().getParent(),
+                            file.getFileName().toString(),
+                            DOWNLOAD_TEMP_SUFFIX))
+                .subscribeOn(Schedulers.boundedElastic()),
+            tempFile ->
+                writeAndVerifyMd5(analysisFile, body, tempFile)
+                    .then(
+                        Mono.fromCallable(
+                                () ->
+                                    Files.move(
+                                        tempFile,
+                                        file,
+                                        StandardCopyOption.ATOMIC_MOVE,
+                                        StandardCopyOption.REPLACE_EXISTING))
+                            .subscribeOn(Schedulers.boundedElastic())),
+            // once moved there is nothing left to delete, otherwise the partial file goes
+            tempFile ->
+                Mono.fromCallable(() -> Files.deleteIfExists(tempFile))
+                    .subscribeOn(Schedulers.boundedElastic()))
+        .thenReturn(file);
+  }
+
+  private Mono<Void> writeAndVerifyMd5(
+      AnalysisFile analysisFile, Flux<DataBuffer> body, Path file) {
+    val objectId = analysisFile.getObjectId();
+    val expectedMd5 = analysisFile.getFileMd5sum();
+    val digest = Md5.newDigest();
+
+    // buffers are written one at a time in order and released once written, the download only
+    // pulls more as they are
+    return Mono.using(
+            () -> AsynchronousFileChannel.open(file, StandardOpenOption.WRITE),
+            channel ->
+                DataBufferUtils.write(
+                        body.doOnNext(buffer -> digest.update(buffer.asByteBuffer())), channel)
+                    .doOnNext(DataBufferUtils::release)
+                    .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                    .then(),
+            AriaClient::closeChannel)
+        .then(
+            Mono.defer(
+                () -> {
+                  val actualMd5 = Md5.hex(digest);
+                  if (actualMd5.equalsIgnoreCase(expectedMd5)) {
+                    return Mono.empty();
+                  }
+                  return Mono.error(
+                      new AriaClientException(
+                          HttpStatus.PRECONDITION_FAILED,
+                          format(
+                              "Md5 mismatch for object %s, expected %s but download has %s",
+                              objectId, expectedMd5, actualMd5)));
+                }));
+  }
+
+  private Mono<String> getFileLink(String objectId) {
+    return getDownloadSpec(objectId).map(AriaClient::presignedUrl);
+  }
+
+  private Mono<ScoreFileSpec> getDownloadSpec(String objectId) {
+    return downloadSpecCache.get(objectId, () -> getDownloadSpec(objectId, DOWNLOAD_OBJECT));
+  }
+
+  private Flux<DataBuffer> downloadFromS3(
+      String objectId, String presignedUrl, Function<String, Flux<DataBuffer>> download) {
+    if (!presignedUrlCacheEnabled) {
+      return download.apply(presignedUrl);
+    }
+    // a cached link the object store rejects anyway is swapped for a fresh one, once. The
+    // rejection comes before any of the body, so nothing has been emitted yet.
+    return download
+        .apply(presignedUrl)
+        .onErrorResume(
+            AriaClient::isRejectedLink,
+            error ->
+                getFileLink(objectId)
+                    .flatMap(
+                        url -> {
+                          // other ranges of the object may have swapped the link already
+                          if (!url.equals(presignedUrl)) {
+                            return Mono.just(url);
+                          }
+                          downloadSpecCache.invalidate(objectId);
+                          return getFileLink(objectId);
+                        })
+                    .flatMapMany(download));
+  }
+
+  private static boolean isRejectedLink(Throwable error) {
+    return error instanceof AriaClientException
+        && ((AriaClientException) error).getStatus() == HttpStatus.FORBIDDEN;
+  }
+
+  private Mono<ScoreFileSpec> getDownloadSpec(String objectId, String operation) {
+    // the download spec behind getFileLink is a read, so it is safe to hedge
+    return hedged(
+        operation,
+        Downstream.SCORE,
+        () ->
+            scoreClient
+                .get()
+                .uri(format("/download/%s?offset=0&length=-1&external=true", objectId))
+                .attribute(OPERATION_ATTRIBUTE, operation)
+                .exchangeToMono(ofMonoTypeOrHandleError(ScoreFileSpec.class))
+                .map(HttpEntity::getBody)
+                .transform(timeout(operation))
+                .retryWhen(retrySpec(operation, Downstream.SCORE)));
   }
 
   private Flux<DataBuffer> downloadFromS3(String presignedUrl) {
-    return WebClient.create(decodeUrl(presignedUrl))
+    return objectStoreClient
         .get()
-        .exchangeToFlux(ofFluxTypeOrHandleError(DataBuffer.class))
-        .retryWhen(clientsRetrySpec);
+        .uri(decodeUrl(presignedUrl))
+        .attribute(OPERATION_ATTRIBUTE, DOWNLOAD_OBJECT)
+        .exchangeToFlux(ofObjectStoreBodyOrHandleError())
+        .retryWhen(retrySpec(DOWNLOAD_OBJECT, Downstream.OBJECT_STORE))
+        .transform(idleTimeout(DOWNLOAD_OBJECT))
+        .transform(this::countDownloaded);
+  }
+
+  private Flux<DataBuffer> downloadFromS3(String presignedUrl, ByteRange range) {
+    return objectStoreClient
+        .get()
+        .uri(decodeUrl(presignedUrl))
+        .attribute(OPERATION_ATTRIBUTE, DOWNLOAD_OBJECT)
+        .header(HttpHeaders.RANGE, range.toRangeHeader())
+        .exchangeToFlux(ofObjectStoreRangeOrHandleError(range))
+        .retryWhen(retrySpec(DOWNLOAD_OBJECT, Downstream.OBJECT_STORE))
+        .transform(idleTimeout(DOWNLOAD_OBJECT))
+        .transform(this::countDownloaded);
+  }
+
+  private Flux<DataBuffer> countDownloaded(Flux<DataBuffer> body) {
+    val bytesDownloaded = metrics.bytesDownloaded(DOWNLOAD_OBJECT, Downstream.OBJECT_STORE);
+    return body.doOnNext(buffer -> bytesDownloaded.increment(buffer.readableByteCount()));
+  }
+
+  private Retry retrySpec(String operation, Downstream target) {
+    val circuitBreaker = circuitBreakers.get(target);
+    val retryBudget = retryBudgets.get(target);
+    return clientsRetrySpec
+        // Retry on 5xx errors only, 4xx is bad request no point retrying. Nor is there any point
+        // while the breaker fails requests fast, and once the budget is spent retries stop too.
+        .filter(
+            t ->
+                t instanceof AriaClientException
+                    && ((AriaClientException) t).getStatus().is5xxServerError()
+                    && !circuitBreaker.isOpen()
+                    && retryBudget.tryAcquire())
+        .doBeforeRetry(signal -> metrics.retried(operation, target));
+  }
+
+  private <T> Function<Mono<T>, Mono<T>> timeout(String operation) {
+    val timeout = timeoutOf(operation);
+    return mono ->
+        timeout == null
+            ? mono
+            : mono.timeout(timeout)
+                .onErrorMap(TimeoutException.class, e -> timedOut(operation, timeout));
+  }
+
+  private <T> Function<Flux<T>, Flux<T>> idleTimeout(String operation) {
+    // streamed bodies, sent or received, can take as long as they need, they only fail when they
+    // stall for the timeout
+    val timeout = timeoutOf(operation);
+    return flux ->
+        timeout == null
+            ? flux
+            : flux.timeout(timeout)
+                .onErrorMap(TimeoutException.class, e -> timedOut(operation, timeout));
+  }
+
+  private Duration timeoutOf(String operation) {
+    val timeoutSec = operationTimeoutsSec.getOrDefault(operation, operationTimeoutSec);
+    return timeoutSec == null || timeoutSec <= 0 ? null : Duration.ofSeconds(timeoutSec);
+  }
+
+  private static AriaClientException timedOut(String operation, Duration timeout) {
+    // a gateway timeout is a 5xx, so a request that timed out is retried like any other
+    return new AriaClientException(
+        HttpStatus.GATEWAY_TIMEOUT,
+        format("%s didn't respond within %s seconds", operation, timeout.getSeconds()));
+  }
+
+  private <T> Mono<T> hedged(String operation, Downstream target, Supplier<Mono<T>> request) {
+    val latencyTracker = latencyTrackers.computeIfAbsent(operation, key -> new LatencyTracker());
+    Supplier<Mono<T>> trackedRequest =
+        () ->
+            Mono.defer(
+                () -> {
+                  val start = System.nanoTime();
+                  return request
+                      .get()
+                      .doOnNext(value -> latencyTracker.record(System.nanoTime() - start));
+                });
+
+    // If the request hasn't answered by the hedging percentile of recent latencies, a second
+    // identical one is sent, whichever answers first wins and the other is cancelled. A failed
+    // hedge never wins, the first request's own result or error is used instead.
+    return Mono.defer(
+        () -> {
+          val delay =
+              hedgingEnabled
+                  ? latencyTracker.percentile(hedgingPercentile)
+                  : Optional.<Duration>empty();
+          if (delay.isEmpty()) {
+            return trackedRequest.get();
+          }
+          Mono<T> hedge =
+              Mono.delay(max(delay.get(), hedgingMinDelay))
+                  .doOnNext(tick -> metrics.hedged(operation, target))
+                  .then(trackedRequest.get())
+                  .onErrorResume(e -> Mono.never());
+          return Mono.firstWithSignal(trackedRequest.get(), hedge);
+        });
+  }
+
+  private static Duration max(Duration a, Duration b) {
+    return a.compareTo(b) >= 0 ? a : b;
+  }
+
+  private ExchangeFilterFunction concurrencyLimitFilter(Downstream target) {
+    val concurrencyLimiter = concurrencyLimiters.get(target);
+    return concurrencyLimiter == null
+        ? (request, next) -> next.exchange(request)
+        : concurrencyLimiter.filter();
+  }
+
+  private ExchangeFilterFunction resilienceFilter(Downstream target) {
+    return circuitBreakers.get(target).filter().andThen(retryBudgets.get(target).filter());
+  }
+
+  private static String presignedUrl(ScoreFileSpec spec) {
+    // we request length = -1 which returns one file part covering the whole object
+    return spec.getParts().get(0).getUrl();
+  }
+
+  private static long objectSize(ScoreFileSpec spec) {
+    if (spec.getObjectSize() != null) {
+      return spec.getObjectSize();
+    }
+    return spec.getParts().stream()
+        .mapToLong(part -> part.getOffset() + part.getPartSize())
+        .max()
+        .orElse(0L);
+  }
+
+  private static CheckpointFile<UploadCheckpoint> uploadCheckpointOf(Path file) {
+    return CheckpointFile.nextTo(file, UPLOAD_CHECKPOINT_SUFFIX, UploadCheckpoint.class);
+  }
+
+  private static CheckpointFile<DownloadCheckpoint> downloadCheckpointOf(Path file) {
+    return CheckpointFile.nextTo(file, DOWNLOAD_CHECKPOINT_SUFFIX, DownloadCheckpoint.class);
+  }
+
+  private static boolean isUnknownUpload(Throwable t) {
+    return t instanceof AriaClientException
+        && (((AriaClientException) t).getStatus() == HttpStatus.NOT_FOUND
+            || ((AriaClientException) t).getStatus() == HttpStatus.BAD_REQUEST);
+  }
+
+  private static void closeChannel(Channel channel) {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      log.warn("Failed to close file channel", e);
+    }
+  }
+
+  private static Flux<DataBuffer> bytesPart(byte[] content, ScoreFileSpec.Part part) {
+    // wrap lazily so every (re)try of the part gets a fresh view of the bytes
+    return Flux.defer(
+        () ->
+            Flux.just(
+                DefaultDataBufferFactory.sharedInstance.wrap(
+                    ByteBuffer.wrap(
+                        content, part.getOffset().intValue(), part.getPartSize().intValue()))));
+  }
+
+  private static Flux<DataBuffer> filePart(Path file, ScoreFileSpec.Part part) {
+    return DataBufferUtils.takeUntilByteCount(
+        DataBufferUtils.readAsynchronousFileChannel(
+            () -> AsynchronousFileChannel.open(file, StandardOpenOption.READ),
+            part.getOffset(),
+            DefaultDataBufferFactory.sharedInstance,
+            FILE_BUFFER_SIZE),
+        part.getPartSize());
+  }
+
+  private static Mono<String> fileMd5(Path file) {
+    return Mono.defer(
+        () -> {
+          val digest = Md5.newDigest();
+          return DataBufferUtils.readAsynchronousFileChannel(
+                  () -> AsynchronousFileChannel.open(file, StandardOpenOption.READ),
+                  DefaultDataBufferFactory.sharedInstance,
+                  FILE_BUFFER_SIZE)
+              .doOnNext(
+                  buffer -> {
+                    digest.update(buffer.asByteBuffer());
+                    DataBufferUtils.release(buffer);
+                  })
+              .then(Mono.fromCallable(() -> Md5.hex(digest)));
+        });
+  }
+
+  private static Flux<DataBuffer> mappedPart(FileChannel channel, ScoreFileSpec.Part part) {
+    val end = part.getOffset() + part.getPartSize();
+
+    // map the part a chunk at a time as it is written out, rather than all of it up front
+    return Flux.generate(
+        part::getOffset,
+        (position, sink) -> {
+          if (position >= end) {
+            sink.complete();
+            return position;
+          }
+          val length = Math.min(MAPPED_CHUNK_SIZE, end - position);
+          try {
+            sink.next(
+                DefaultDataBufferFactory.sharedInstance.wrap(
+                    channel.map(FileChannel.MapMode.READ_ONLY, position, length)));
+          } catch (IOException e) {
+            sink.error(e);
+          }
+          return position + length;
+        });
+  }
+
+  private static List<ScoreFileSpec.Part> partsInOrder(ScoreFileSpec spec) {
+    return spec.getParts().stream()
+        .sorted(Comparator.comparing(ScoreFileSpec.Part::getOffset))
+        .collect(toList());
+  }
+
+  private static Flux<DataBuffer> digesting(
+      Flux<DataBuffer> body, Runnable restart, Consumer<ByteBuffer> update) {
+    // a retried body streams from its start again, and so do the digests fed by it
+    return Flux.defer(
+        () -> {
+          restart.run();
+          return body.doOnNext(buffer -> update.accept(buffer.asByteBuffer()));
+        });
+  }
+
+  private static String md5Hex(byte[] content, ScoreFileSpec.Part part) {
+    val digest = Md5.newDigest();
+    digest.update(content, part.getOffset().intValue(), part.getPartSize().intValue());
+    return Md5.hex(digest);
+  }
+
+  private static AriaClientProperties properties(
+      String songRootUrl,
+      String scoreRootUrl,
+      String clientId,
+      String clientSecret,
+      String tokenUrl,
+      Integer retryMaxAttempts,
+      Integer retryDelaySec) {
+    val properties = new AriaClientProperties();
+    properties.setSongRootUrl(songRootUrl);
+    properties.setScoreRootUrl(scoreRootUrl);
+    properties.setClientId(clientId);
+    properties.setClientSecret(clientSecret);
+    properties.setTokenUrl(tokenUrl);
+    properties.setRetryMaxAttempts(retryMaxAttempts);
+    properties.setRetryDelaySec(retryDelaySec);
+    return properties;
   }
 
   private static String decodeUrl(String str) {
@@ -256,7 +1625,68 @@ public class AriaClient {
 
   private static Function<ClientResponse, Mono<ResponseEntity<Void>>>
       ofBodilessTypeOrHandleError() {
-    return ofMonoTypeOrHandleError(Void.class);
+    // toEntity(Void.class) cancels a body after its first buffer, which closes the connection,
+    // toBodilessEntity reads the body to its end so the connection goes back to the pool
+    val handleError = ofMonoTypeOrHandleError(Void.class);
+    return clientResponse ->
+        clientResponse.statusCode().isError()
+            ? handleError.apply(clientResponse)
+            : clientResponse.toBodilessEntity();
+  }
+
+  private static Function<ClientResponse, Flux<DataBuffer>> ofObjectStoreBodyOrHandleError() {
+    return clientResponse ->
+        clientResponse.statusCode() == HttpStatus.FORBIDDEN
+            ? AriaClient.<DataBuffer>rejectedLink(clientResponse).flux()
+            : ofFluxTypeOrHandleError(DataBuffer.class).apply(clientResponse);
+  }
+
+  private static Function<ClientResponse, Flux<DataBuffer>> ofObjectStoreRangeOrHandleError(
+      ByteRange range) {
+    val body = ofObjectStoreBodyOrHandleError();
+    return clientResponse -> {
+      // A store or proxy that ignores the Range header answers 200 with the whole object, which
+      // would be written at the offset of the range. That is only the range asked for when the
+      // range starts at 0 and is as long as the object.
+      val status = clientResponse.statusCode();
+      val wholeObject =
+          status == HttpStatus.OK
+              && range.getStart() == 0
+              && clientResponse.headers().contentLength().orElse(-1) == range.length();
+      if (status.is2xxSuccessful() && status != HttpStatus.PARTIAL_CONTENT && !wholeObject) {
+        return clientResponse
+            .releaseBody()
+            .then(
+                Mono.<DataBuffer>error(
+                    new AriaClientException(
+                        HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE,
+                        format(
+                            "Object store answered %s of a ranged request for %s instead of %s",
+                            status, range.toRangeHeader(), HttpStatus.PARTIAL_CONTENT))))
+            .flux();
+      }
+      return body.apply(clientResponse);
+    };
+  }
+
+  private static Function<ClientResponse, Mono<ResponseEntity<Void>>>
+      ofObjectStoreBodilessOrHandleError() {
+    val bodiless = ofBodilessTypeOrHandleError();
+    return clientResponse ->
+        clientResponse.statusCode() == HttpStatus.FORBIDDEN
+            ? rejectedLink(clientResponse)
+            : bodiless.apply(clientResponse);
+  }
+
+  private static <T> Mono<T> rejectedLink(ClientResponse clientResponse) {
+    // the object store answers a presigned url it won't accept, e.g. an expired one, with a 403
+    // and an xml body
+    return clientResponse
+        .releaseBody()
+        .then(
+            Mono.error(
+                new AriaClientException(
+                    HttpStatus.FORBIDDEN, "Object store rejected the presigned url")));
   }
 
   private static <V> Function<ClientResponse, Flux<V>> ofFluxTypeOrHandleError(Class<V> classType) {
@@ -308,31 +1738,4 @@ public class AriaClient {
       return clientResponse.toEntity(classType);
     };
   }
-
-  private ExchangeFilterFunction createOauthFilter(
-      String regId, String tokenUrl, String clientId, String clientSecret) {
-    // create client registration with Id for lookup by filter when needed
-    val registration =
-        ClientRegistration.withRegistrationId(regId)
-            .tokenUri(tokenUrl)
-            .clientId(clientId)
-            .clientSecret(clientSecret)
-            .authorizationGrantType(AuthorizationGrantType.CLIENT_CREDENTIALS)
-            .build();
-    val repo = new InMemoryReactiveClientRegistrationRepository(registration);
-
-    // create new client manager to isolate from server oauth2 manager
-    // more info: https://github.com/spring-projects/spring-security/issues/7984
-    val authorizedClientService = new InMemoryReactiveOAuth2AuthorizedClientService(repo);
-    val authorizedClientManager =
-        new AuthorizedClientServiceReactiveOAuth2AuthorizedClientManager(
-            repo, authorizedClientService);
-    authorizedClientManager.setAuthorizedClientProvider(
-        new ClientCredentialsReactiveOAuth2AuthorizedClientProvider());
-
-    // create filter function
-    val oauth = new ServerOAuth2AuthorizedClientExchangeFilterFunction(authorizedClientManager);
-    oauth.setDefaultClientRegistrationId(regId);
-    return oauth;
-  }
 }
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import lombok.val;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import reactor.core.publisher.Mono;
+
+/**
+ * Records latency, response status, retries, in flight requests and bytes transferred for every
+ * call made by the client, tagged by the public operation and the downstream service it went to.
+ * Without a meter registry every meter is a no-op.
+ */
+class AriaClientMetrics {
+  /** Request attribute carrying the public operation a request is made for. */
+  static final String OPERATION_ATTRIBUTE = AriaClientMetrics.class.getName() + ".operation";
+
+  private static final String REQUESTS = "aria.client.requests";
+  private static final String IN_FLIGHT = "aria.client.requests.active";
+  private static final String CIRCUIT_BREAKER_STATE = "aria.client.circuit.breaker.state";
+  private static final String CONCURRENCY_LIMIT = "aria.client.concurrency.limit";
+  private static final String RETRIES = "aria.client.retries";
+  private static final String HEDGES = "aria.client.hedges";
+  private static final String BYTES_UPLOADED = "aria.client.bytes.uploaded";
+  private static final String BYTES_DOWNLOADED = "aria.client.bytes.downloaded";
+  private static final String UNKNOWN_OPERATION = "unknown";
+  private static final String CLIENT_ERROR_STATUS = "CLIENT_ERROR";
+  private static final String CANCELLED_STATUS = "CANCELLED";
+
+  private final MeterRegistry registry;
+  // gauges only hold a weak reference to what they measure, so the counters are kept here
+  private final Map<Tags, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+  private AriaClientMetrics(MeterRegistry registry) {
+    this.registry = registry;
+  }
+
+  static AriaClientMetrics of(MeterRegistry registry) {
+    // a composite without any registries added hands out no-op meters
+    return new AriaClientMetrics(registry == null ? new CompositeMeterRegistry() : registry);
+  }
+
+  /**
+   * Times every exchange made through a web client, from the request until the response status and
+   * headers arrive, and counts it by status. Each retry goes through the filter again, so every
+   * attempt is recorded. Requests cancelled before they are answered, by a hedge winning, a timeout
+   * or the caller, are recorded as CANCELLED with the time they had taken.
+   */
+  ExchangeFilterFunction filter(Downstream target) {
+    return (request, next) -> {
+      val operation =
+          request.attribute(OPERATION_ATTRIBUTE).map(Object::toString).orElse(UNKNOWN_OPERATION);
+      val tags = tags(operation, target);
+
+      return Mono.defer(
+          () -> {
+            val active = inFlight(tags);
+            val sample = Timer.start(registry);
+            // a cancel can still come after the response, which was recorded already
+            val recorded = new AtomicBoolean();
+            Consumer<String> record =
+                status -> {
+                  if (recorded.compareAndSet(false, true)) {
+                    sample.stop(requestTimer(tags, status));
+                  }
+                };
+            active.incrementAndGet();
+            return next.exchange(request)
+                .doOnNext(response -> record.accept(String.valueOf(response.rawStatusCode())))
+                .doOnError(e -> record.accept(CLIENT_ERROR_STATUS))
+                .doOnCancel(() -> record.accept(CANCELLED_STATUS))
+                .doFinally(signal -> active.decrementAndGet());
+          });
+    };
+  }
+
+  void circuitBreaker(Downstream target, CircuitBreaker breaker) {
+    // 0 closed, 1 open, 2 half open
+    Gauge.builder(CIRCUIT_BREAKER_STATE, breaker, b -> b.getState().ordinal())
+        .tag("target", target.tag())
+        .register(registry);
+  }
+
+  void concurrencyLimit(Downstream target, AdaptiveConcurrencyLimiter limiter) {
+    Gauge.builder(CONCURRENCY_LIMIT, limiter, AdaptiveConcurrencyLimiter::getLimit)
+        .tag("target", target.tag())
+        .register(registry);
+  }
+
+  void retried(String operation, Downstream target) {
+    registry.counter(RETRIES, tags(operation, target)).increment();
+  }
+
+  void hedged(String operation, Downstream target) {
+    registry.counter(HEDGES, tags(operation, target)).increment();
+  }
+
+  Counter bytesUploaded(String operation, Downstream target) {
+    return registry.counter(BYTES_UPLOADED, tags(operation, target));
+  }
+
+  Counter bytesDownloaded(String operation, Downstream target) {
+    return registry.counter(BYTES_DOWNLOADED, tags(operation, target));
+  }
+
+  private Timer requestTimer(Tags tags, String status) {
+    return Timer.builder(REQUESTS)
+        .tags(tags.and("status", status))
+        .publishPercentileHistogram()
+        .register(registry);
+  }
+
+  private AtomicInteger inFlight(Tags tags) {
+    return inFlight.computeIfAbsent(
+        tags, key -> registry.gauge(IN_FLIGHT, key, new AtomicInteger()));
+  }
+
+  private static Tags tags(String operation, Downstream target) {
+    return Tags.of("operation", operation, "target", target.tag());
+  }
+}
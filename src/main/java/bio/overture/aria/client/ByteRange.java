@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.client;
+
+import static java.lang.String.format;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Value;
+import lombok.val;
+
+/** Inclusive range of bytes in an object, as used by the HTTP Range header. */
+@Value
+class ByteRange {
+  long start;
+  long end;
+
+  long length() {
+    return end - start + 1;
+  }
+
+  String toRangeHeader() {
+    return format("bytes=%s-%s", start, end);
+  }
+
+  static List<ByteRange> split(long objectSize, long rangeSize) {
+    val ranges = new ArrayList<ByteRange>();
+    for (long start = 0; start < objectSize; start += rangeSize) {
+      ranges.add(new ByteRange(start, Math.min(start + rangeSize, objectSize) - 1));
+    }
+    return ranges;
+  }
+}
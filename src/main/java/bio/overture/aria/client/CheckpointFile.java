@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.client;
+
+import bio.overture.aria.components.Jackson;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Small json file kept next to a file being transferred, recording enough progress to resume the
+ * transfer after a failure instead of starting again from byte zero.
+ */
+@Slf4j
+@RequiredArgsConstructor
+class CheckpointFile<T> {
+  private static final ObjectMapper MAPPER = Jackson.sharedMapper();
+
+  @Getter private final Path path;
+  private final Class<T> type;
+
+  static <T> CheckpointFile<T> nextTo(Path file, String suffix, Class<T> type) {
+    return new CheckpointFile<>(file.resolveSibling(file.getFileName() + suffix), type);
+  }
+
+  Optional<T> read() {
+    if (!Files.exists(path)) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(MAPPER.readValue(path.toFile(), type));
+    } catch (IOException e) {
+      // an unreadable checkpoint only costs us the progress it recorded
+      log.warn("Ignoring unreadable checkpoint {}", path, e);
+      return Optional.empty();
+    }
+  }
+
+  Mono<Void> save(T checkpoint) {
+    return Mono.fromRunnable(() -> write(checkpoint))
+        .subscribeOn(Schedulers.boundedElastic())
+        .then();
+  }
+
+  Mono<Void> delete() {
+    return Mono.fromRunnable(
+            () -> {
+              try {
+                Files.deleteIfExists(path);
+              } catch (IOException e) {
+                throw new UncheckedIOException(e);
+              }
+            })
+        .subscribeOn(Schedulers.boundedElastic())
+        .then();
+  }
+
+  private synchronized void write(T checkpoint) {
+    // write to a temp file and move it over the checkpoint so a crash never leaves it half written
+    val temp = path.resolveSibling(path.getFileName() + ".tmp");
+    try {
+      MAPPER.writeValue(temp.toFile(), checkpoint);
+      Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.client;
+
+import static java.lang.String.format;
+
+import bio.overture.aria.exceptions.AriaClientException;
+import java.time.Duration;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import reactor.core.publisher.Mono;
+
+/**
+ * Circuit breaker for a single downstream. After failureThreshold consecutive failures (5xx
+ * responses or requests that never got a response) it opens and fails every request fast with a 503
+ * for openDuration. It then lets a single probe request through, which either closes it again or
+ * opens it for another openDuration.
+ */
+class CircuitBreaker {
+  enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  private final Downstream target;
+  private final int failureThreshold;
+  private final long openDurationNanos;
+
+  private State state = State.CLOSED;
+  private int consecutiveFailures;
+  private long openedAt;
+  private boolean probeInFlight;
+
+  private CircuitBreaker(Downstream target, int failureThreshold, Duration openDuration) {
+    this.target = target;
+    this.failureThreshold = failureThreshold;
+    this.openDurationNanos = openDuration.toNanos();
+  }
+
+  static CircuitBreaker of(Downstream target, int failureThreshold, Duration openDuration) {
+    return new CircuitBreaker(target, failureThreshold, openDuration);
+  }
+
+  static CircuitBreaker disabled(Downstream target) {
+    return new CircuitBreaker(target, Integer.MAX_VALUE, Duration.ZERO);
+  }
+
+  ExchangeFilterFunction filter() {
+    return (request, next) ->
+        Mono.defer(
+            () -> {
+              if (!tryAcquire()) {
+                return Mono.error(
+                    new AriaClientException(
+                        HttpStatus.SERVICE_UNAVAILABLE,
+                        format("Circuit breaker for %s is open", target.tag())));
+              }
+              return next.exchange(request)
+                  .doOnNext(
+                      response -> {
+                        if (response.statusCode().is5xxServerError()) {
+                          onFailure();
+                        } else {
+                          onSuccess();
+                        }
+                      })
+                  .doOnError(e -> onFailure())
+                  .doOnCancel(this::onCancel);
+            });
+  }
+
+  /** True while requests are being failed fast, retrying them until then is pointless. */
+  synchronized boolean isOpen() {
+    return state == State.OPEN && System.nanoTime() - openedAt < openDurationNanos;
+  }
+
+  synchronized State getState() {
+    return state;
+  }
+
+  private synchronized boolean tryAcquire() {
+    if (state == State.OPEN) {
+      if (System.nanoTime() - openedAt < openDurationNanos) {
+        return false;
+      }
+      state = State.HALF_OPEN;
+      probeInFlight = false;
+    }
+    if (state == State.HALF_OPEN) {
+      if (probeInFlight) {
+        return false;
+      }
+      probeInFlight = true;
+    }
+    return true;
+  }
+
+  private synchronized void onSuccess() {
+    state = State.CLOSED;
+    consecutiveFailures = 0;
+    probeInFlight = false;
+  }
+
+  private synchronized void onFailure() {
+    consecutiveFailures++;
+    if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+      state = State.OPEN;
+      openedAt = System.nanoTime();
+      probeInFlight = false;
+    }
+  }
+
+  private synchronized void onCancel() {
+    // a cancelled probe didn't tell us anything, let the next request probe instead
+    probeInFlight = false;
+  }
+}
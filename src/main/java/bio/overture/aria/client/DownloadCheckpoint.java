@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.client;
+
+import java.util.SortedSet;
+import java.util.TreeSet;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+class DownloadCheckpoint {
+  private String objectId;
+  private Long objectSize;
+  private Long rangeSizeBytes;
+  // start offset of every range that has been written to the file
+  private SortedSet<Long> completedRanges = new TreeSet<>();
+
+  DownloadCheckpoint(String objectId, Long objectSize, Long rangeSizeBytes) {
+    this.objectId = objectId;
+    this.objectSize = objectSize;
+    this.rangeSizeBytes = rangeSizeBytes;
+  }
+
+  boolean matches(String objectId, Long objectSize, Long rangeSizeBytes) {
+    return this.objectId.equals(objectId)
+        && this.objectSize.equals(objectSize)
+        && this.rangeSizeBytes.equals(rangeSizeBytes);
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.client;
+
+import bio.overture.aria.properties.AriaClientProperties;
+import io.netty.channel.ChannelOption;
+import java.time.Duration;
+import lombok.Getter;
+import lombok.val;
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Builds the http connectors of the song, score and object store web clients. They share one pool,
+ * so every call draws from the same warm connections, which are closed with {@link #close()}.
+ */
+class HttpConnectors {
+  private static final String POOL_NAME = "aria";
+  private static final String HTTPS = "https";
+
+  private final ConnectionProvider provider;
+  // song and score, whose json responses may be compressed
+  @Getter private final ClientHttpConnector metadata;
+  // object store bodies are passed on byte for byte, they are checked against their md5
+  @Getter private final ClientHttpConnector objectStore;
+
+  private HttpConnectors(
+      ConnectionProvider provider, ClientHttpConnector metadata, ClientHttpConnector objectStore) {
+    this.provider = provider;
+    this.metadata = metadata;
+    this.objectStore = objectStore;
+  }
+
+  static HttpConnectors create(AriaClientProperties properties) {
+    // connections are pooled per remote host, so max connections is a per host limit
+    val provider =
+        ConnectionProvider.builder(POOL_NAME)
+            .maxConnections(properties.getConnectionMaxPerHost())
+            .pendingAcquireMaxCount(properties.getConnectionPendingAcquireMaxCount())
+            .pendingAcquireTimeout(
+                Duration.ofMillis(properties.getConnectionPendingAcquireTimeoutMs()))
+            .maxIdleTime(Duration.ofSeconds(properties.getConnectionMaxIdleTimeSec()))
+            .maxLifeTime(Duration.ofSeconds(properties.getConnectionMaxLifeTimeSec()))
+            .evictInBackground(Duration.ofSeconds(properties.getConnectionEvictInBackgroundSec()))
+            .build();
+
+    var httpClient =
+        HttpClient.create(provider)
+            .keepAlive(true)
+            .option(ChannelOption.SO_KEEPALIVE, true)
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, properties.getConnectTimeoutMs());
+
+    if (properties.getResponseTimeoutSec() != null) {
+      httpClient =
+          httpClient.responseTimeout(Duration.ofSeconds(properties.getResponseTimeoutSec()));
+    }
+
+    // compress sends Accept-Encoding and decompresses gzip and deflate responses as they stream in
+    return new HttpConnectors(
+        provider,
+        connector(
+            httpClient.compress(properties.getResponseCompressionEnabled()),
+            properties.getHttp2Enabled()),
+        connector(httpClient, properties.getHttp2Enabled()));
+  }
+
+  /** Closes the pooled connections, once the connectors are no longer used. */
+  void close() {
+    provider.dispose();
+  }
+
+  private static ClientHttpConnector connector(HttpClient httpClient, boolean http2Enabled) {
+    if (!http2Enabled) {
+      return new ReactorClientHttpConnector(httpClient);
+    }
+    // Reactor Netty rejects h2 without tls, so it is only asked for on https, where it is
+    // negotiated while connecting and servers without it stay on http 1.1. Plain http stays on
+    // http 1.1, as an h2c upgrade of a request with a body, like a token fetch or a submit, isn't
+    // reliably supported by servers.
+    val http = new ReactorClientHttpConnector(httpClient);
+    val https =
+        new ReactorClientHttpConnector(httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11));
+    return (method, uri, requestCallback) ->
+        (HTTPS.equalsIgnoreCase(uri.getScheme()) ? https : http)
+            .connect(method, uri, requestCallback);
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.client;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Keeps the latencies of the most recent successful calls of one operation, to tell how long a
+ * request usually takes before another one is hedged.
+ */
+class LatencyTracker {
+  private static final int WINDOW_SIZE = 512;
+  // percentiles of just a few samples say little, so none are given until there are enough
+  private static final int MIN_SAMPLES = 32;
+
+  private final long[] samples = new long[WINDOW_SIZE];
+  private int count;
+  private int next;
+
+  synchronized void record(long nanos) {
+    samples[next] = nanos;
+    next = (next + 1) % WINDOW_SIZE;
+    count = Math.min(count + 1, WINDOW_SIZE);
+  }
+
+  /** The given percentile (0 to 100) of the recorded latencies, empty until enough are known. */
+  Optional<Duration> percentile(double percentile) {
+    long[] sorted;
+    synchronized (this) {
+      if (count < MIN_SAMPLES) {
+        return Optional.empty();
+      }
+      sorted = Arrays.copyOf(samples, count);
+    }
+    Arrays.sort(sorted);
+    int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+    return Optional.of(Duration.ofNanos(sorted[Math.max(0, Math.min(index, sorted.length - 1))]));
+  }
+}
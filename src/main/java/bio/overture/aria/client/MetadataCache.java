@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.client;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import lombok.val;
+import reactor.core.publisher.Mono;
+
+/**
+ * Size bounded, least recently used cache of song lookups. Each entry is the cached Mono of the
+ * lookup itself, so concurrent gets for the same key share a single request and an expired value is
+ * fetched again by the next get. Errors and empty results are never kept.
+ */
+class MetadataCache<K, V> {
+  private final boolean enabled;
+  private final Function<V, Duration> ttl;
+  private final Map<K, Mono<V>> entries;
+
+  private MetadataCache(boolean enabled, int maxSize, Function<V, Duration> ttl) {
+    this.enabled = enabled;
+    this.ttl = ttl;
+    this.entries =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<K, Mono<V>> eldest) {
+            return size() > maxSize;
+          }
+        };
+  }
+
+  static <K, V> MetadataCache<K, V> of(int maxSize, Function<V, Duration> ttl) {
+    return new MetadataCache<>(true, maxSize, ttl);
+  }
+
+  static <K, V> MetadataCache<K, V> disabled() {
+    return new MetadataCache<>(false, 0, v -> Duration.ZERO);
+  }
+
+  Mono<V> get(K key, Supplier<Mono<V>> loader) {
+    if (!enabled) {
+      return loader.get();
+    }
+    synchronized (entries) {
+      val cached = entries.get(key);
+      if (cached != null) {
+        return cached;
+      }
+      val entry = loader.get().cache(ttl, error -> Duration.ZERO, () -> Duration.ZERO);
+      entries.put(key, entry);
+      return entry;
+    }
+  }
+
+  void invalidate(K key) {
+    if (enabled) {
+      synchronized (entries) {
+        entries.remove(key);
+      }
+    }
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.client;
+
+import static java.lang.String.format;
+
+import bio.overture.aria.exceptions.AriaClientException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.security.oauth2.client.endpoint.OAuth2ClientCredentialsGrantRequest;
+import org.springframework.security.oauth2.client.endpoint.WebClientReactiveClientCredentialsTokenResponseClient;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2AuthorizationException;
+import org.springframework.security.oauth2.core.OAuth2ErrorCodes;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AccessTokenResponse;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+/**
+ * Client credentials token shared by the song and score clients. The token is refreshed in the
+ * background once it gets within refreshAhead of expiring, so requests keep going out with the
+ * current token instead of waiting on the token endpoint. Concurrent refreshes share a single call,
+ * and a failed refresh leaves the current token in use for as long as it is still valid.
+ */
+@Slf4j
+class OAuthTokenManager {
+  // a failed background refresh isn't tried again for this long, so a struggling token endpoint
+  // doesn't get a refresh for every request
+  private static final Duration REFRESH_RETRY_DELAY = Duration.ofSeconds(5);
+  private static final Set<String> REJECTED_ERROR_CODES =
+      Set.of(
+          OAuth2ErrorCodes.INVALID_CLIENT,
+          OAuth2ErrorCodes.UNAUTHORIZED_CLIENT,
+          OAuth2ErrorCodes.INVALID_GRANT,
+          OAuth2ErrorCodes.INVALID_SCOPE,
+          OAuth2ErrorCodes.ACCESS_DENIED);
+
+  private final ClientRegistration registration;
+  private final WebClientReactiveClientCredentialsTokenResponseClient tokenClient;
+  private final Duration refreshAhead;
+
+  private OAuth2AccessToken token;
+  private Instant refreshAt;
+  private Instant nextRefreshAttempt = Instant.MIN;
+  private Mono<OAuth2AccessToken> refreshing;
+
+  private OAuthTokenManager(
+      ClientRegistration registration,
+      WebClientReactiveClientCredentialsTokenResponseClient tokenClient,
+      Duration refreshAhead) {
+    this.registration = registration;
+    this.tokenClient = tokenClient;
+    this.refreshAhead = refreshAhead;
+  }
+
+  static OAuthTokenManager of(
+      String regId,
+      String tokenUrl,
+      String clientId,
+      String clientSecret,
+      Duration refreshAhead,
+      ClientHttpConnector connector) {
+    val registration =
+        ClientRegistration.withRegistrationId(regId)
+            .tokenUri(tokenUrl)
+            .clientId(clientId)
+            .clientSecret(clientSecret)
+            .authorizationGrantType(AuthorizationGrantType.CLIENT_CREDENTIALS)
+            .build();
+
+    // token requests go over the same connection pool as everything else
+    val tokenClient = new WebClientReactiveClientCredentialsTokenResponseClient();
+    tokenClient.setWebClient(WebClient.builder().clientConnector(connector).build());
+
+    return new OAuthTokenManager(registration, tokenClient, refreshAhead);
+  }
+
+  /** Adds the bearer token to every request, a 401 drops the token so the next one is new. */
+  ExchangeFilterFunction filter() {
+    return (request, next) ->
+        token()
+            .flatMap(
+                accessToken ->
+                    next.exchange(
+                            ClientRequest.from(request)
+                                .headers(
+                                    headers -> headers.setBearerAuth(accessToken.getTokenValue()))
+                                .build())
+                        .doOnNext(
+                            response -> {
+                              if (response.statusCode() == HttpStatus.UNAUTHORIZED) {
+                                invalidate(accessToken);
+                              }
+                            }));
+  }
+
+  Mono<OAuth2AccessToken> token() {
+    return Mono.defer(
+        () -> {
+          val now = Instant.now();
+          synchronized (this) {
+            if (!isValid(token, now)) {
+              return refresh();
+            }
+            if (!now.isBefore(refreshAt) && !now.isBefore(nextRefreshAttempt)) {
+              // the refresh runs on its own, this request goes out with the current token
+              refresh().subscribe(refreshed -> {}, e -> {});
+            }
+            return Mono.just(token);
+          }
+        });
+  }
+
+  private synchronized Mono<OAuth2AccessToken> refresh() {
+    if (refreshing == null) {
+      refreshing =
+          tokenClient
+              .getTokenResponse(new OAuth2ClientCredentialsGrantRequest(registration))
+              .map(OAuth2AccessTokenResponse::getAccessToken)
+              // both clear the refresh before its result is handed out, so a token that is
+              // dropped as soon as it arrives gets a refresh of its own
+              .doOnNext(this::update)
+              .onErrorMap(this::refreshFailed)
+              .cache();
+    }
+    return refreshing;
+  }
+
+  private synchronized void update(OAuth2AccessToken refreshed) {
+    refreshing = null;
+    token = refreshed;
+    val issuedAt = refreshed.getIssuedAt() == null ? Instant.now() : refreshed.getIssuedAt();
+    if (refreshed.getExpiresAt() == null) {
+      // without an expiry the token is used until it is rejected
+      refreshAt = Instant.MAX;
+    } else {
+      // short lived tokens are refreshed half way through instead
+      val lifetime = Duration.between(issuedAt, refreshed.getExpiresAt());
+      val ahead =
+          refreshAhead.compareTo(lifetime.dividedBy(2)) < 0 ? refreshAhead : lifetime.dividedBy(2);
+      refreshAt = refreshed.getExpiresAt().minus(ahead);
+    }
+  }
+
+  private synchronized Throwable refreshFailed(Throwable e) {
+    refreshing = null;
+    val now = Instant.now();
+    if (isValid(token, now)) {
+      log.warn("Failed to refresh access token, still using the current one: {}", e.getMessage());
+      // try again sooner when the current token is about to run out
+      val remaining =
+          token.getExpiresAt() == null
+              ? REFRESH_RETRY_DELAY
+              : Duration.between(now, token.getExpiresAt()).dividedBy(2);
+      nextRefreshAttempt =
+          now.plus(remaining.compareTo(REFRESH_RETRY_DELAY) < 0 ? remaining : REFRESH_RETRY_DELAY);
+    }
+    // the token endpoint turning our credentials down won't change on a retry, anything else might
+    return isRejected(e)
+        ? new AriaClientException(
+            HttpStatus.UNAUTHORIZED, format("Failed to get access token: %s", e.getMessage()))
+        : new AriaClientException(
+            HttpStatus.SERVICE_UNAVAILABLE,
+            format("Failed to get access token: %s", e.getMessage()));
+  }
+
+  private synchronized void invalidate(OAuth2AccessToken rejected) {
+    if (token == rejected) {
+      token = null;
+    }
+  }
+
+  private static boolean isRejected(Throwable e) {
+    return e instanceof OAuth2AuthorizationException
+        && REJECTED_ERROR_CODES.contains(
+            ((OAuth2AuthorizationException) e).getError().getErrorCode());
+  }
+
+  private static boolean isValid(OAuth2AccessToken token, Instant now) {
+    return token != null && (token.getExpiresAt() == null || now.isBefore(token.getExpiresAt()));
+  }
+}
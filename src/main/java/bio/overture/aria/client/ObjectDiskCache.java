@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.client;
+
+import static java.lang.String.format;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Size capped cache of downloaded objects in a local directory, keyed by object id and md5, so an
+ * object is only ever cached with the content it was verified to have. Entries are evicted least
+ * recently used first, a hit sets the entry's modified time to now.
+ *
+ * <p>The directory can be shared by several processes. Entries only appear by an atomic move of a
+ * complete file, so a reader never sees a partial one, and a deleted entry stays readable to anyone
+ * who already opened it. A lock file per entry keeps processes from loading the same object at the
+ * same time, and one more keeps them from evicting at the same time. File locks are held by the
+ * whole JVM, so clients in one process share a single cache per directory.
+ */
+@Slf4j
+class ObjectDiskCache {
+  // entries are named objectId-md5, anything with a suffix is a lock file or a partial download
+  private static final String LOCK_SUFFIX = ".lock";
+  private static final String EVICTION_LOCK = ".eviction" + LOCK_SUFFIX;
+  // partial downloads and lock files left behind by failed loads are removed once this old
+  private static final Duration ABANDONED_AFTER = Duration.ofDays(1);
+  private static final Map<Path, ObjectDiskCache> CACHES = new ConcurrentHashMap<>();
+
+  private final Path directory;
+  private final long maxSizeBytes;
+  private final Map<String, Mono<Path>> loading = new ConcurrentHashMap<>();
+  private final AtomicBoolean evicting = new AtomicBoolean();
+
+  private ObjectDiskCache(Path directory, long maxSizeBytes) {
+    this.directory = directory;
+    this.maxSizeBytes = maxSizeBytes;
+  }
+
+  static ObjectDiskCache of(Path directory, long maxSizeBytes) {
+    val cache =
+        CACHES.computeIfAbsent(
+            directory.toAbsolutePath().normalize(),
+            dir -> {
+              try {
+                Files.createDirectories(dir);
+              } catch (IOException e) {
+                throw new UncheckedIOException("Failed to create object cache directory " + dir, e);
+              }
+              return new ObjectDiskCache(dir, maxSizeBytes);
+            });
+    if (cache.maxSizeBytes != maxSizeBytes) {
+      throw new IllegalArgumentException(
+          format(
+              "Object cache %s is already open with a max size of %s bytes, not %s",
+              cache.directory, cache.maxSizeBytes, maxSizeBytes));
+    }
+    return cache;
+  }
+
+  /**
+   * The cached file of the object whatever its md5, for callers that don't know the md5. An object
+   * doesn't change content under its id, so any entry of it is that content. Completes empty when
+   * the object isn't cached.
+   */
+  Mono<Path> find(String objectId) {
+    return Mono.fromCallable(() -> findEntry(objectId))
+        .subscribeOn(Schedulers.boundedElastic())
+        .flatMap(Mono::justOrEmpty);
+  }
+
+  /**
+   * The cached file of the object, first loaded into the path given to loader when it isn't cached
+   * yet. The loader must only leave a complete, verified file at that path.
+   */
+  Mono<Path> get(String objectId, String md5, Function<Path, Mono<Void>> loader) {
+    val key = objectId + "-" + md5.toLowerCase();
+    val entry = directory.resolve(key);
+
+    return Mono.fromCallable(() -> touch(entry))
+        .subscribeOn(Schedulers.boundedElastic())
+        .flatMap(
+            hit ->
+                hit
+                    ? Mono.just(entry)
+                    // concurrent misses in this process share one load
+                    : loading.computeIfAbsent(
+                        key,
+                        k ->
+                            load(k, entry, loader).doFinally(signal -> loading.remove(k)).cache()));
+  }
+
+  private Optional<Path> findEntry(String objectId) throws IOException {
+    val entries = new ArrayList<Path>();
+    try (val files = Files.newDirectoryStream(directory, objectId + "-*")) {
+      for (val file : files) {
+        // lock files and partial downloads of the object match too
+        if (!file.getFileName().toString().contains(".")) {
+          entries.add(file);
+        }
+      }
+    }
+    for (val entry : entries) {
+      if (touch(entry)) {
+        return Optional.of(entry);
+      }
+    }
+    return Optional.empty();
+  }
+
+  private Mono<Path> load(String key, Path entry, Function<Path, Mono<Void>> loader) {
+    // another process may have loaded the entry while we waited for the lock
+    return Mono.usingWhen(
+            Mono.fromCallable(() -> lock(directory.resolve(key + LOCK_SUFFIX), true))
+                .subscribeOn(Schedulers.boundedElastic()),
+            lock ->
+                Mono.fromCallable(() -> touch(entry))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .flatMap(
+                        hit ->
+                            hit
+                                ? Mono.empty()
+                                : loader
+                                    .apply(entry)
+                                    .then(
+                                        Mono.fromRunnable(() -> evict(entry))
+                                            .subscribeOn(Schedulers.boundedElastic()))),
+            lock -> Mono.fromRunnable(() -> unlock(lock)).subscribeOn(Schedulers.boundedElastic()))
+        .thenReturn(entry);
+  }
+
+  private void evict(Path keep) {
+    if (!evicting.compareAndSet(false, true)) {
+      return;
+    }
+    val evictionLock = lock(directory.resolve(EVICTION_LOCK), false);
+    if (evictionLock == null) {
+      // another process is evicting already
+      evicting.set(false);
+      return;
+    }
+    try {
+      val entries = new ArrayList<CachedFile>();
+      val abandonedBefore = Instant.now().minus(ABANDONED_AFTER);
+      try (val files = Files.list(directory)) {
+        for (val file : files.collect(Collectors.toList())) {
+          val name = file.getFileName().toString();
+          val modified = Files.getLastModifiedTime(file).toInstant();
+          if (!name.contains(".")) {
+            entries.add(new CachedFile(file, Files.size(file), modified));
+          } else if (!name.equals(EVICTION_LOCK) && modified.isBefore(abandonedBefore)) {
+            // partial downloads and lock files of loads that failed
+            Files.deleteIfExists(file);
+          }
+        }
+      }
+
+      var totalSize = entries.stream().mapToLong(CachedFile::getSize).sum();
+      entries.sort(Comparator.comparing(CachedFile::getModified));
+      for (val entry : entries) {
+        if (totalSize <= maxSizeBytes) {
+          break;
+        }
+        if (entry.getPath().equals(keep)) {
+          continue;
+        }
+        Files.deleteIfExists(entry.getPath());
+        // losing the lock file to a race only means two processes may load the same entry
+        Files.deleteIfExists(
+            entry.getPath().resolveSibling(entry.getPath().getFileName() + LOCK_SUFFIX));
+        totalSize -= entry.getSize();
+      }
+    } catch (IOException e) {
+      // a failed eviction leaves the cache over its cap until the next one
+      log.warn("Failed to evict from object cache {}", directory, e);
+    } finally {
+      unlock(evictionLock);
+      evicting.set(false);
+    }
+  }
+
+  private static boolean touch(Path entry) throws IOException {
+    try {
+      Files.setLastModifiedTime(entry, FileTime.from(Instant.now()));
+      return true;
+    } catch (NoSuchFileException e) {
+      return false;
+    }
+  }
+
+  private static FileLock lock(Path lockFile, boolean wait) {
+    FileChannel channel = null;
+    try {
+      channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+      val lock = wait ? channel.lock() : channel.tryLock();
+      if (lock == null) {
+        channel.close();
+      }
+      return lock;
+    } catch (IOException e) {
+      closeQuietly(channel);
+      throw new UncheckedIOException("Failed to lock " + lockFile, e);
+    }
+  }
+
+  private static void closeQuietly(FileChannel channel) {
+    if (channel == null) {
+      return;
+    }
+    try {
+      channel.close();
+    } catch (IOException e) {
+      log.warn("Failed to close object cache lock file", e);
+    }
+  }
+
+  private static void unlock(FileLock lock) {
+    try {
+      lock.release();
+      lock.channel().close();
+    } catch (IOException e) {
+      log.warn("Failed to release object cache lock", e);
+    }
+  }
+
+  @Value
+  private static class CachedFile {
+    Path path;
+    long size;
+    Instant modified;
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Value;
+import lombok.val;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Cuts a stream of buffers into the consecutive parts of an upload, without copying. Buffers that
+ * straddle a part boundary are split into slices sharing the original memory. Content that is
+ * longer or shorter than the parts together fails the stream.
+ */
+class PartSlicer {
+  private final List<Long> partSizes;
+  private int part = 0;
+  private long remainingInPart;
+
+  private PartSlicer(List<Long> partSizes) {
+    this.partSizes = partSizes;
+    this.remainingInPart = partSizes.isEmpty() ? 0 : partSizes.get(0);
+  }
+
+  // emits one window of buffers for each part, in order
+  static Flux<Flux<DataBuffer>> slice(Flux<DataBuffer> content, List<Long> partSizes) {
+    return Flux.defer(
+        () -> {
+          val slicer = new PartSlicer(partSizes);
+          return content
+              .concatMapIterable(slicer::cut)
+              // short content fails the window of the part it ends in, before that part is sent
+              .concatWith(Mono.fromRunnable(slicer::checkComplete))
+              .windowUntil(Slice::isLastInPart)
+              .map(window -> window.map(Slice::getBuffer));
+        });
+  }
+
+  private List<Slice> cut(DataBuffer buffer) {
+    val slices = new ArrayList<Slice>();
+    var index = buffer.readPosition();
+    var remaining = buffer.readableByteCount();
+
+    try {
+      while (remaining > 0) {
+        if (remainingInPart == 0) {
+          if (++part >= partSizes.size()) {
+            throw new IllegalStateException("Content is larger than the parts of the upload");
+          }
+          remainingInPart = partSizes.get(part);
+          continue;
+        }
+        val length = (int) Math.min(remaining, remainingInPart);
+        remainingInPart -= length;
+        slices.add(new Slice(buffer.retainedSlice(index, length), remainingInPart == 0));
+        index += length;
+        remaining -= length;
+      }
+    } catch (IllegalStateException e) {
+      slices.forEach(slice -> DataBufferUtils.release(slice.getBuffer()));
+      throw e;
+    } finally {
+      DataBufferUtils.release(buffer);
+    }
+    return slices;
+  }
+
+  private void checkComplete() {
+    if (part < partSizes.size() - 1 || remainingInPart != 0) {
+      throw new IllegalStateException("Content is smaller than the parts of the upload");
+    }
+  }
+
+  @Value
+  private static class Slice {
+    DataBuffer buffer;
+    boolean lastInPart;
+  }
+}
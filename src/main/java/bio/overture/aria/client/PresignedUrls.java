@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.client;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+import lombok.val;
+import org.springframework.web.util.UriComponentsBuilder;
+
+/** Reads when a presigned object store url stops being accepted from its signature parameters. */
+final class PresignedUrls {
+  private static final DateTimeFormatter SIGNED_AT_FORMAT =
+      DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+
+  private PresignedUrls() {}
+
+  /**
+   * Expiry of an S3 (or GCS) signature version 4 url, from its signing time plus lifetime, or of a
+   * version 2 url from its Expires epoch seconds. Empty when the url carries neither.
+   */
+  static Optional<Instant> expiryOf(String presignedUrl) {
+    try {
+      val params = UriComponentsBuilder.fromUriString(presignedUrl).build().getQueryParams();
+      for (val prefix : new String[] {"X-Amz-", "X-Goog-"}) {
+        val signedAt = params.getFirst(prefix + "Date");
+        val expires = params.getFirst(prefix + "Expires");
+        if (signedAt != null && expires != null) {
+          return Optional.of(
+              LocalDateTime.parse(signedAt, SIGNED_AT_FORMAT)
+                  .toInstant(ZoneOffset.UTC)
+                  .plus(Duration.ofSeconds(Long.parseLong(expires))));
+        }
+      }
+      val expires = params.getFirst("Expires");
+      if (expires != null) {
+        return Optional.of(Instant.ofEpochSecond(Long.parseLong(expires)));
+      }
+    } catch (IllegalArgumentException | DateTimeParseException e) {
+      // not a url we can read the expiry of, it just isn't cached
+    }
+    return Optional.empty();
+  }
+}
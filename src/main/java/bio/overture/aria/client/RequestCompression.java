@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import lombok.val;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClient;
+
+/**
+ * Compresses request bodies of at least a minimum size with gzip or deflate, smaller ones are sent
+ * as they are since compressing them saves less than it costs.
+ */
+class RequestCompression {
+  private static final Set<String> ENCODINGS = Set.of("gzip", "deflate");
+
+  private final String encoding;
+  private final int minSizeBytes;
+
+  private RequestCompression(String encoding, int minSizeBytes) {
+    this.encoding = encoding;
+    this.minSizeBytes = minSizeBytes;
+  }
+
+  static RequestCompression of(String encoding, int minSizeBytes) {
+    if (!ENCODINGS.contains(encoding)) {
+      throw new IllegalArgumentException(
+          "Request compression encoding must be one of " + ENCODINGS + " but was " + encoding);
+    }
+    return new RequestCompression(encoding, minSizeBytes);
+  }
+
+  static RequestCompression disabled() {
+    return new RequestCompression(null, Integer.MAX_VALUE);
+  }
+
+  WebClient.RequestHeadersSpec<?> body(WebClient.RequestBodySpec request, String body) {
+    val bytes = body.getBytes(StandardCharsets.UTF_8);
+    if (encoding == null || bytes.length < minSizeBytes) {
+      return request.bodyValue(body);
+    }
+    return request.header(HttpHeaders.CONTENT_ENCODING, encoding).bodyValue(compress(bytes));
+  }
+
+  private byte[] compress(byte[] bytes) {
+    // the body is in memory already, compressing it in one go keeps it retryable as is
+    val compressed = new ByteArrayOutputStream(bytes.length / 4);
+    try (OutputStream out =
+        encoding.equals("gzip")
+            ? new GZIPOutputStream(compressed)
+            : new DeflaterOutputStream(compressed)) {
+      out.write(bytes);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return compressed.toByteArray();
+  }
+}
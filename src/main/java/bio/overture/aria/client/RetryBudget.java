@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.client;
+
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+
+/**
+ * Token bucket that caps retries to a fraction of the requests sent to one downstream. Every
+ * request adds ratio tokens, up to maxTokens, and every retry takes a whole token, so once a
+ * downstream starts failing retries stop after the budget is spent instead of multiplying the load
+ * on it.
+ */
+class RetryBudget {
+  private final double ratio;
+  private final double maxTokens;
+  private double tokens;
+
+  private RetryBudget(double ratio, double maxTokens) {
+    this.ratio = ratio;
+    this.maxTokens = maxTokens;
+    // start full so a client that has only sent a few requests can still retry them
+    this.tokens = maxTokens;
+  }
+
+  static RetryBudget of(double ratio, int maxTokens) {
+    return new RetryBudget(ratio, maxTokens);
+  }
+
+  static RetryBudget unlimited() {
+    return new RetryBudget(0, Double.POSITIVE_INFINITY);
+  }
+
+  /** Deposits into the bucket for every request made through a web client, retries included. */
+  ExchangeFilterFunction filter() {
+    return (request, next) -> next.exchange(request).doOnSubscribe(s -> deposit());
+  }
+
+  synchronized boolean tryAcquire() {
+    if (tokens < 1) {
+      return false;
+    }
+    tokens -= 1;
+    return true;
+  }
+
+  private synchronized void deposit() {
+    tokens = Math.min(maxTokens, tokens + ratio);
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.components;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.val;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+
+/**
+ * Decodes the elements of one array field of a json object as the bytes arrive, using jackson's non
+ * blocking parser. Only the element being parsed is buffered, never the whole document.
+ */
+public class JsonArrayFieldDecoder<T> {
+  private final String fieldName;
+  private final ObjectReader reader;
+  private final JsonParser parser;
+  private final ByteArrayFeeder feeder;
+
+  // nesting depth of the document around the array
+  private int depth = 0;
+  private boolean fieldFound = false;
+  private boolean inArray = false;
+
+  private TokenBuffer element;
+  private int elementDepth;
+
+  private JsonArrayFieldDecoder(String fieldName, Class<T> type, ObjectMapper mapper)
+      throws IOException {
+    this.fieldName = fieldName;
+    this.reader = mapper.readerFor(type);
+    this.parser = mapper.getFactory().createNonBlockingByteArrayParser();
+    this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+  }
+
+  public static <T> Flux<T> decode(
+      Flux<DataBuffer> body, String fieldName, Class<T> type, ObjectMapper mapper) {
+    return Flux.defer(
+        () -> {
+          try {
+            val decoder = new JsonArrayFieldDecoder<T>(fieldName, type, mapper);
+            return body.concatMapIterable(decoder::feed)
+                .concatWith(Flux.defer(() -> Flux.fromIterable(decoder.finish())));
+          } catch (IOException e) {
+            return Flux.error(e);
+          }
+        });
+  }
+
+  private List<T> feed(DataBuffer buffer) {
+    val bytes = new byte[buffer.readableByteCount()];
+    buffer.read(bytes);
+    DataBufferUtils.release(buffer);
+    try {
+      feeder.feedInput(bytes, 0, bytes.length);
+      return drain();
+    } catch (IOException e) {
+      throw Exceptions.propagate(e);
+    }
+  }
+
+  private List<T> finish() {
+    feeder.endOfInput();
+    try {
+      return drain();
+    } catch (IOException e) {
+      throw Exceptions.propagate(e);
+    }
+  }
+
+  private List<T> drain() throws IOException {
+    val values = new ArrayList<T>();
+    JsonToken token;
+    while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+      if (element != null) {
+        // in the middle of an element, keep buffering it until it closes
+        element.copyCurrentEvent(parser);
+        elementDepth += token.isStructStart() ? 1 : token.isStructEnd() ? -1 : 0;
+        if (elementDepth == 0) {
+          values.add(readElement());
+        }
+      } else if (inArray) {
+        if (token == JsonToken.END_ARRAY) {
+          inArray = false;
+          depth--;
+          continue;
+        }
+        element = new TokenBuffer(parser);
+        element.copyCurrentEvent(parser);
+        elementDepth = token.isStructStart() ? 1 : 0;
+        if (elementDepth == 0) {
+          values.add(readElement());
+        }
+      } else {
+        if (token == JsonToken.FIELD_NAME) {
+          fieldFound = depth == 1 && fieldName.equals(parser.getCurrentName());
+          continue;
+        }
+        if (token.isStructStart()) {
+          depth++;
+          inArray = fieldFound && token == JsonToken.START_ARRAY;
+        } else if (token.isStructEnd()) {
+          depth--;
+        }
+        fieldFound = false;
+      }
+    }
+    return values;
+  }
+
+  private T readElement() throws IOException {
+    try (val elementParser = element.asParser()) {
+      return reader.readValue(elementParser);
+    } finally {
+      element = null;
+    }
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.components;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import lombok.val;
+
+/**
+ * Deserializes a free form json section according to the {@link JsonSectionMode} set on the mapper
+ * with {@link #withMode(ObjectMapper, JsonSectionMode)}, eager when none is set.
+ */
+public class JsonSectionDeserializer extends StdDeserializer<Map<String, Object>> {
+  private static final String MODE_ATTRIBUTE = JsonSectionMode.class.getName();
+
+  public JsonSectionDeserializer() {
+    super(Map.class);
+  }
+
+  // copy of the mapper that reads sections in the given mode, the mapper itself is untouched
+  public static ObjectMapper withMode(ObjectMapper mapper, JsonSectionMode mode) {
+    val copy = mapper.copy();
+    copy.setConfig(copy.getDeserializationConfig().withAttribute(MODE_ATTRIBUTE, mode));
+    return copy;
+  }
+
+  @Override
+  public Map<String, Object> deserialize(JsonParser p, DeserializationContext ctxt)
+      throws IOException {
+    val mode = (JsonSectionMode) ctxt.getAttribute(MODE_ATTRIBUTE);
+
+    if (mode == JsonSectionMode.SKIP) {
+      p.skipChildren();
+      return null;
+    } else if (mode == JsonSectionMode.LAZY) {
+      val tokens = new TokenBuffer(p, ctxt);
+      tokens.copyCurrentStructure(p);
+      return new LazyJsonMap(tokens, p.getCodec() != null ? p.getCodec() : Jackson.sharedMapper());
+    }
+    return ctxt.readValue(
+        p, ctxt.getTypeFactory().constructMapType(LinkedHashMap.class, String.class, Object.class));
+  }
+}
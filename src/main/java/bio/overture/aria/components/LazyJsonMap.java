@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.components;
+
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import lombok.val;
+
+/**
+ * Json object held as the tokens it was read from, which are only turned into a map the first time
+ * the map is accessed. Until then it costs a compact token buffer instead of a tree of maps, lists
+ * and boxed values.
+ */
+public class LazyJsonMap extends AbstractMap<String, Object> {
+  private static final TypeReference<LinkedHashMap<String, Object>> MAP_TYPE =
+      new TypeReference<>() {};
+
+  private final ObjectCodec codec;
+  private TokenBuffer tokens;
+  private volatile Map<String, Object> map;
+
+  public LazyJsonMap(TokenBuffer tokens, ObjectCodec codec) {
+    this.tokens = tokens;
+    this.codec = codec;
+  }
+
+  private Map<String, Object> map() {
+    if (map == null) {
+      synchronized (this) {
+        if (map == null) {
+          try (val parser = tokens.asParser(codec)) {
+            map = codec.readValue(parser, MAP_TYPE);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+          tokens = null;
+        }
+      }
+    }
+    return map;
+  }
+
+  public boolean isParsed() {
+    return map != null;
+  }
+
+  @Override
+  public Set<Entry<String, Object>> entrySet() {
+    return map().entrySet();
+  }
+
+  @Override
+  public int size() {
+    return map().size();
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return map().containsKey(key);
+  }
+
+  @Override
+  public Object get(Object key) {
+    return map().get(key);
+  }
+
+  @Override
+  public Object put(String key, Object value) {
+    return map().put(key, value);
+  }
+
+  @Override
+  public Object remove(Object key) {
+    return map().remove(key);
+  }
+}
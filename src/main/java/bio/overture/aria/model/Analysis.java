@@ -18,7 +18,9 @@
 
 package bio.overture.aria.model;
 
+import bio.overture.aria.components.JsonSectionDeserializer;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
@@ -49,6 +51,7 @@ public class Analysis {
 
   private SortedSet<AnalysisStateChange> analysisStateHistory;
 
+  @JsonDeserialize(using = JsonSectionDeserializer.class)
   private Map<String, Object> data;
 
   public Boolean isPublished() {
@@ -84,6 +87,8 @@ public class Analysis {
     private String matchedNormalSubmitterSampleId;
     private Specimen specimen;
     private Donor donor;
+
+    @JsonDeserialize(using = JsonSectionDeserializer.class)
     private Map<String, Object> info;
   }
 
@@ -97,6 +102,8 @@ public class Analysis {
     private String tumourNormalDesignation;
     private String specimenTissueSource;
     private String specimenType;
+
+    @JsonDeserialize(using = JsonSectionDeserializer.class)
     private Map<String, Object> info;
   }
 
@@ -108,6 +115,8 @@ public class Analysis {
     private String studyId;
     private String submitterDonorId;
     private String gender;
+
+    @JsonDeserialize(using = JsonSectionDeserializer.class)
     private Map<String, Object> info;
   }
 
@@ -118,6 +127,8 @@ public class Analysis {
     private String initialState;
     private String updatedState;
     private LocalDateTime updatedAt;
+
+    @JsonDeserialize(using = JsonSectionDeserializer.class)
     private Map<String, Object> data;
 
     @Override
@@ -27,6 +27,8 @@ import lombok.NoArgsConstructor;
 public class ScoreFileSpec {
   private String objectId;
   private String uploadId;
+  private String objectMd5;
+  private Long objectSize;
   private List<Part> parts;
 
   @Data
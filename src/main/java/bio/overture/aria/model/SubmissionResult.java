@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.model;
+
+import lombok.Value;
+import lombok.With;
+
+/**
+ * Outcome of submitting one analysis: the analysis and file it got in song, and if it failed, the
+ * stage it failed at, the error and whether the analysis was rolled back.
+ */
+@Value
+public class SubmissionResult {
+  public enum Stage {
+    SUBMIT,
+    GET_FILE,
+    UPLOAD,
+    PUBLISH
+  }
+
+  AnalysisSubmission submission;
+  String analysisId;
+  AnalysisFile analysisFile;
+  Stage failedStage;
+  Throwable error;
+  @With boolean rolledBack;
+
+  public static SubmissionResult success(
+      AnalysisSubmission submission, String analysisId, AnalysisFile analysisFile) {
+    return new SubmissionResult(submission, analysisId, analysisFile, null, null, false);
+  }
+
+  public static SubmissionResult failure(
+      AnalysisSubmission submission,
+      String analysisId,
+      AnalysisFile analysisFile,
+      Stage failedStage,
+      Throwable error) {
+    return new SubmissionResult(submission, analysisId, analysisFile, failedStage, error, false);
+  }
+
+  public boolean isSuccess() {
+    return error == null;
+  }
+}
@@ -1,5 +1,8 @@
 package bio.overture.aria.properties;
 
+import bio.overture.aria.components.JsonSectionMode;
+import java.util.HashMap;
+import java.util.Map;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
@@ -15,4 +18,103 @@ public class AriaClientProperties {
   private String tokenUrl;
   private Integer retryMaxAttempts;
   private Integer retryDelaySec;
+  // the access token is refreshed in the background this long before it expires
+  private Integer tokenRefreshAheadSec = 60;
+  // retries back off exponentially from retryDelaySec up to this, randomized by the jitter factor
+  private Integer retryMaxBackoffSec = 60;
+  private Double retryJitterFactor = 0.5;
+  // every request earns ratio retry tokens, up to max tokens, and every retry spends one
+  private Boolean retryBudgetEnabled = false;
+  private Double retryBudgetRatio = 0.2;
+  private Integer retryBudgetMaxTokens = 20;
+  // song, score and the object store each fail fast for open sec after threshold failures in a row
+  private Boolean circuitBreakerEnabled = false;
+  private Integer circuitBreakerFailureThreshold = 5;
+  private Integer circuitBreakerOpenSec = 30;
+  // requests in flight to each of song, score and the object store, the limit grows by one while
+  // responses are healthy and shrinks by the backoff ratio on errors or, for song and score, a
+  // latency over tolerance times the usual of the operation, requests over it wait in a queue of
+  // at most max queue size and fail with a 429 beyond it
+  private Boolean concurrencyLimiterEnabled = true;
+  private Integer concurrencyLimiterInitialLimit = 20;
+  private Integer concurrencyLimiterMinLimit = 1;
+  private Integer concurrencyLimiterMaxLimit = 200;
+  private Integer concurrencyLimiterMaxQueueSize = 1000;
+  private Double concurrencyLimiterBackoffRatio = 0.9;
+  private Double concurrencyLimiterLatencyTolerance = 2.0;
+
+  // time allowed for each request attempt, overridden per operation name (e.g. getAnalysis) by
+  // operationTimeoutsSec, unset means no timeout. Streamed transfers, i.e. part uploads, object
+  // downloads and analysis pages, only time out when no bytes move for that long.
+  private Integer operationTimeoutSec;
+  private Map<String, Integer> operationTimeoutsSec = new HashMap<>();
+  // getAnalysis, getFileEntityFromSong and download links are sent again when they take longer
+  // than the percentile of recent latencies, the first answer wins
+  private Boolean hedgingEnabled = false;
+  private Double hedgingPercentile = 95.0;
+  private Integer hedgingMinDelayMs = 20;
+
+  // max number of file parts uploaded to the object store at the same time
+  private Integer uploadPartConcurrency = 4;
+  // uploads of an AnalysisFile are skipped when score already has an object with the same md5
+  // and size under its object id, they then return AriaClient.ALREADY_UPLOADED
+  private Boolean uploadSkipExisting = false;
+
+  // number of byte ranges of an object downloaded at the same time, 1 streams the whole object
+  // over a single connection
+  private Integer downloadRangeConcurrency = 1;
+  private Long downloadRangeSizeBytes = 64L * 1024 * 1024;
+
+  // max number of requests in flight for a single bulk call, e.g. getAnalyses
+  private Integer bulkConcurrency = 16;
+  // number of analyses in each page requested by streamAnalyses
+  private Integer streamPageSize = 100;
+  // submitAnalyses runs this many submit, get file and publish calls at a time, and this many
+  // uploads at a time
+  private Integer workflowMetadataConcurrency = 16;
+  private Integer workflowTransferConcurrency = 4;
+  // max number of items in flight for a single bulk call of AriaBlockingClient
+  private Integer blockingBulkParallelism = 16;
+
+  // cache of getAnalysis, getAnalysisFileFromSong and getFileEntityFromSong lookups
+  private Boolean metadataCacheEnabled = false;
+  private Integer metadataCacheMaxSize = 10000;
+  private Integer metadataCachePublishedTtlSec = 3600;
+  private Integer metadataCacheUnpublishedTtlSec = 30;
+  // presigned download urls are reused until this long before the expiry in their signature
+  private Boolean presignedUrlCacheEnabled = false;
+  private Integer presignedUrlCacheMaxSize = 10000;
+  private Integer presignedUrlSafetyMarginSec = 60;
+  // verified downloads are kept in this directory, which processes on the same node can share,
+  // the least recently used are deleted once it holds more than max size bytes
+  private Boolean diskCacheEnabled = false;
+  private String diskCacheDir = System.getProperty("java.io.tmpdir") + "/aria-object-cache";
+  private Long diskCacheMaxSizeBytes = 10L * 1024 * 1024 * 1024;
+
+  // connection pool shared by song, score and object store calls, limits apply per host
+  private Integer connectionMaxPerHost = 100;
+  private Integer connectionPendingAcquireMaxCount = 1000;
+  private Integer connectionPendingAcquireTimeoutMs = 45000;
+  private Integer connectionMaxIdleTimeSec = 30;
+  private Integer connectionMaxLifeTimeSec = 300;
+  private Integer connectionEvictInBackgroundSec = 30;
+  private Integer connectTimeoutMs = 10000;
+  // time allowed between reads of a response, unset means no timeout
+  private Integer responseTimeoutSec;
+  // song, score and object store calls over https negotiate http 2, plain http stays on http 1.1
+  private Boolean http2Enabled = false;
+  // song and score are asked for gzip responses, which are decompressed as they stream in
+  private Boolean responseCompressionEnabled = true;
+  // submitPayload bodies of at least min size are sent gzip or deflate encoded, the server has to
+  // accept a Content-Encoding on requests
+  private Boolean requestCompressionEnabled = false;
+  private String requestCompressionEncoding = "gzip";
+  private Integer requestCompressionMinSizeBytes = 8192;
+
+  // json codec used by the song and score clients
+  private Boolean jsonBlackbirdEnabled = false;
+  private Integer codecMaxInMemorySizeBytes = 16 * 1024 * 1024;
+  // how Analysis.data, AnalysisStateChange.data and the sample, specimen and donor info maps are
+  // read: EAGER maps, LAZY maps parsed on first access or SKIP to drop them entirely
+  private JsonSectionMode analysisParseMode = JsonSectionMode.EAGER;
 }
@@ -0,0 +1,328 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.client;
+
+import static bio.overture.aria.client.AriaClientMetrics.OPERATION_ATTRIBUTE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import bio.overture.aria.exceptions.AriaClientException;
+import bio.overture.aria.properties.AriaClientProperties;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.Disposable;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.netty.http.server.HttpServer;
+import reactor.test.StepVerifier;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+  @Test
+  void backsOffOnServerErrors() {
+    val limiter = limiter(10, 1);
+    val exchange = new StubExchange();
+
+    exchange.send(limiter);
+    exchange.respond(0, HttpStatus.INTERNAL_SERVER_ERROR);
+
+    assertThat(limiter.getLimit()).isEqualTo(5);
+  }
+
+  @Test
+  void backsOffOnTooManyRequests() {
+    val limiter = limiter(10, 1);
+    val exchange = new StubExchange();
+
+    exchange.send(limiter);
+    exchange.respond(0, HttpStatus.TOO_MANY_REQUESTS);
+
+    assertThat(limiter.getLimit()).isEqualTo(5);
+  }
+
+  @Test
+  void backsOffOnFailedRequests() {
+    val limiter = limiter(10, 1);
+    val exchange = new StubExchange();
+
+    exchange.send(limiter);
+    exchange.fail(0, new IOException("Connection reset"));
+
+    assertThat(limiter.getLimit()).isEqualTo(5);
+  }
+
+  @Test
+  void ignoresTheClientsOwnErrors() {
+    val limiter = limiter(10, 1);
+    val exchange = new StubExchange();
+
+    exchange.send(limiter);
+    exchange.fail(
+        0, new AriaClientException(HttpStatus.SERVICE_UNAVAILABLE, "Circuit breaker is open"));
+
+    assertThat(limiter.getLimit()).isEqualTo(10);
+  }
+
+  @Test
+  void backsOffOnSlowResponses() {
+    val limiter = AdaptiveConcurrencyLimiter.of(Downstream.SONG, 10, 1, 100, 10, 0.5, 2.0);
+    val exchange = new StubExchange();
+
+    for (int i = 0; i < 10; i++) {
+      exchange.send(limiter);
+      exchange.respond(i, HttpStatus.OK);
+    }
+    val limitWhileFast = limiter.getLimit();
+    exchange.send(limiter);
+    exchange.respondAfter(10, Duration.ofMillis(200));
+
+    assertThat(limiter.getLimit()).isEqualTo(limitWhileFast / 2);
+  }
+
+  @Test
+  void growsOnlyWhenMoreThanHalfTheLimitIsInUse() {
+    val limiter = limiter(4, 1);
+    val exchange = new StubExchange();
+
+    // one request at a time never uses more than a quarter of the limit
+    for (int i = 0; i < 5; i++) {
+      exchange.send(limiter);
+      exchange.respond(i, HttpStatus.OK);
+    }
+    assertThat(limiter.getLimit()).isEqualTo(4);
+
+    exchange.send(limiter);
+    exchange.send(limiter);
+    exchange.send(limiter);
+    exchange.respond(5, HttpStatus.OK);
+
+    assertThat(limiter.getLimit()).isEqualTo(5);
+  }
+
+  @Test
+  void failsRequestsBeyondTheQueue() {
+    val limiter = limiter(1, 1);
+    val exchange = new StubExchange();
+
+    exchange.send(limiter);
+    exchange.send(limiter);
+    val overflow = limiter.filter().filter(request(), exchange);
+
+    StepVerifier.create(overflow)
+        .expectErrorSatisfies(
+            e ->
+                assertThat(((AriaClientException) e).getStatus())
+                    .isEqualTo(HttpStatus.TOO_MANY_REQUESTS))
+        .verify();
+    assertThat(exchange.calls()).isEqualTo(1);
+  }
+
+  @Test
+  void holdsThePlaceUntilTheBodyIsRead() {
+    val limiter = limiter(1, 1);
+    val exchange = new StubExchange();
+
+    exchange.send(limiter);
+    exchange.send(limiter);
+    exchange.respond(0, HttpStatus.OK, false);
+    assertThat(exchange.calls()).isEqualTo(1);
+
+    exchange.readBody(0);
+    assertThat(exchange.calls()).isEqualTo(2);
+  }
+
+  @Test
+  void givesThePlaceBackWhenCancelledWhileWaiting() {
+    val limiter = limiter(1, 1);
+    val exchange = new StubExchange();
+
+    exchange.send(limiter);
+    val cancelled = exchange.send(limiter);
+    cancelled.dispose();
+    // the cancelled request left the queue, so there's room for another
+    exchange.send(limiter);
+    exchange.respond(0, HttpStatus.OK);
+
+    assertThat(exchange.calls()).isEqualTo(2);
+    exchange.respond(1, HttpStatus.OK);
+    assertThat(exchange.calls()).isEqualTo(2);
+  }
+
+  @Test
+  void givesThePlaceBackWhenCancelledInFlight() {
+    val limiter = limiter(1, 1);
+    val exchange = new StubExchange();
+
+    val cancelled = exchange.send(limiter);
+    exchange.send(limiter);
+    assertThat(exchange.calls()).isEqualTo(1);
+
+    cancelled.dispose();
+    assertThat(exchange.calls()).isEqualTo(2);
+  }
+
+  @Test
+  void turnedAwayRequestsDontOpenTheCircuitBreaker() {
+    val server =
+        HttpServer.create()
+            .port(0)
+            .route(
+                routes ->
+                    routes
+                        .post(
+                            "/oauth/token",
+                            (request, response) ->
+                                response
+                                    .header(HttpHeaderNames.CONTENT_TYPE, "application/json")
+                                    .sendString(
+                                        Mono.just(
+                                            "{\"access_token\":\"test\",\"token_type\":\"bearer\","
+                                                + "\"expires_in\":3600}")))
+                        .get(
+                            "/studies/{studyId}/analysis/{analysisId}",
+                            (request, response) ->
+                                response
+                                    .header(HttpHeaderNames.CONTENT_TYPE, "application/json")
+                                    .sendString(
+                                        Mono.delay(Duration.ofMillis(200))
+                                            .thenReturn(
+                                                "{\"analysisId\":\""
+                                                    + request.param("analysisId")
+                                                    + "\",\"studyId\":\"TEST-CA\"}"))))
+            .bindNow();
+    val root = "http://localhost:" + server.port();
+    val properties = new AriaClientProperties();
+    properties.setSongRootUrl(root);
+    properties.setScoreRootUrl(root);
+    properties.setClientId("id");
+    properties.setClientSecret("secret");
+    properties.setTokenUrl(root + "/oauth/token");
+    properties.setRetryMaxAttempts(3);
+    properties.setRetryDelaySec(0);
+    properties.setCircuitBreakerEnabled(true);
+    properties.setCircuitBreakerFailureThreshold(1);
+    properties.setConcurrencyLimiterInitialLimit(1);
+    properties.setConcurrencyLimiterMinLimit(1);
+    properties.setConcurrencyLimiterMaxLimit(1);
+    properties.setConcurrencyLimiterMaxQueueSize(0);
+
+    try (val client = new AriaClient(properties)) {
+      val results =
+          Flux.range(0, 3)
+              .flatMap(
+                  i ->
+                      client
+                          .getAnalysis("TEST-CA", UUID.randomUUID())
+                          .map(analysis -> HttpStatus.OK)
+                          .onErrorResume(AriaClientException.class, e -> Mono.just(e.getStatus())))
+              .collectList()
+              .block();
+      assertThat(results)
+          .containsExactlyInAnyOrder(
+              HttpStatus.OK, HttpStatus.TOO_MANY_REQUESTS, HttpStatus.TOO_MANY_REQUESTS);
+
+      // with a threshold of one the breaker would fail this fast had it counted the overflow
+      val analysisId = UUID.randomUUID();
+      assertThat(client.getAnalysis("TEST-CA", analysisId).block().getAnalysisId())
+          .isEqualTo(analysisId.toString());
+    } finally {
+      server.disposeNow();
+    }
+  }
+
+  private static AdaptiveConcurrencyLimiter limiter(int initialLimit, int maxQueueSize) {
+    return AdaptiveConcurrencyLimiter.withoutLatencySignal(
+        Downstream.SONG, initialLimit, 1, 100, maxQueueSize, 0.5);
+  }
+
+  private static ClientRequest request() {
+    return ClientRequest.create(HttpMethod.GET, URI.create("http://song.stub/analysis"))
+        .attribute(OPERATION_ATTRIBUTE, "getAnalysis")
+        .build();
+  }
+
+  /** Answers each request only when told to, so a test decides what is in flight. */
+  private static class StubExchange implements ExchangeFunction {
+    private final AtomicInteger calls = new AtomicInteger();
+    private final List<Sinks.One<ClientResponse>> pending = new ArrayList<>();
+    // as the limiter passed them on, in the order they were answered
+    private final List<ClientResponse> responses = new ArrayList<>();
+
+    @Override
+    public Mono<ClientResponse> exchange(ClientRequest request) {
+      return Mono.defer(
+          () -> {
+            calls.incrementAndGet();
+            Sinks.One<ClientResponse> sink = Sinks.one();
+            pending.add(sink);
+            return sink.asMono();
+          });
+    }
+
+    Disposable send(AdaptiveConcurrencyLimiter limiter) {
+      return limiter.filter().filter(request(), this).subscribe(responses::add, e -> {});
+    }
+
+    void respond(int request, HttpStatus status) {
+      respond(request, status, true);
+    }
+
+    void respond(int request, HttpStatus status, boolean readBody) {
+      pending.get(request).tryEmitValue(ClientResponse.create(status).body("body").build());
+      if (readBody) {
+        readBody(request);
+      }
+    }
+
+    void respondAfter(int request, Duration latency) {
+      try {
+        Thread.sleep(latency.toMillis());
+      } catch (InterruptedException e) {
+        throw Exceptions.propagate(e);
+      }
+      respond(request, HttpStatus.OK);
+    }
+
+    void fail(int request, Throwable error) {
+      pending.get(request).tryEmitError(error);
+    }
+
+    void readBody(int request) {
+      responses.get(request).releaseBody().block();
+    }
+
+    int calls() {
+      return calls.get();
+    }
+  }
+}
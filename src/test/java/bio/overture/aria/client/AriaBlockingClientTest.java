@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.client;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import bio.overture.aria.exceptions.AriaClientException;
+import bio.overture.aria.model.Analysis;
+import bio.overture.aria.model.AnalysisFile;
+import bio.overture.aria.model.BulkResult;
+import bio.overture.aria.properties.AriaClientProperties;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.val;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import reactor.core.publisher.Mono;
+
+public class AriaBlockingClientTest {
+  private static final String STUDY_ID = "TEST-CA";
+  private static final UUID SLOW = UUID.randomUUID();
+  private static final UUID MISSING = UUID.randomUUID();
+  private static final UUID EMPTY = UUID.randomUUID();
+
+  private final StubClient stub = new StubClient();
+  private final AriaBlockingClient client = new AriaBlockingClient(stub, 2);
+
+  @AfterEach
+  void close() {
+    client.close();
+  }
+
+  @Test
+  void bulkResultsFollowTheOrderOfTheKeys() {
+    val fast = UUID.randomUUID();
+
+    val results = client.getAnalyses(STUDY_ID, List.of(SLOW, fast));
+
+    assertThat(results).extracting(BulkResult::getKey).containsExactly(SLOW, fast);
+    assertThat(results)
+        .extracting(result -> result.getValue().getAnalysisId())
+        .containsExactly(SLOW.toString(), fast.toString());
+  }
+
+  @Test
+  void failedItemsDontFailTheOthers() {
+    val found = UUID.randomUUID();
+
+    val results = client.getAnalyses(STUDY_ID, List.of(MISSING, found));
+
+    assertThat(results).extracting(BulkResult::isSuccess).containsExactly(false, true);
+    assertThat(results.get(0).getError()).hasMessageContaining("Analysis not found");
+  }
+
+  @Test
+  void emptyItemsFailAsNotFound() {
+    val results = client.publishAnalyses(STUDY_ID, List.of(EMPTY));
+
+    assertThat(results).hasSize(1);
+    assertThat(results.get(0).getError())
+        .isInstanceOfSatisfying(
+            AriaClientException.class,
+            e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.NOT_FOUND));
+  }
+
+  @Test
+  void bulkCallsRunAtMostParallelismAtATime() {
+    val analysisIds =
+        List.of(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+
+    client.publishAnalyses(STUDY_ID, analysisIds);
+
+    assertThat(stub.maxInFlight).hasValue(2);
+  }
+
+  @Test
+  void uploadResultsFollowTheOrderOfTheMap() {
+    val files = new LinkedHashMap<AnalysisFile, Path>();
+    for (val name : List.of("c.bam", "a.bam", "b.bam")) {
+      val analysisFile = new AnalysisFile();
+      analysisFile.setObjectId(UUID.randomUUID().toString());
+      analysisFile.setFileName(name);
+      files.put(analysisFile, Path.of(name));
+    }
+
+    val results = client.uploadFiles(files);
+
+    assertThat(results).extracting(BulkResult::getValue).containsExactly("c.bam", "a.bam", "b.bam");
+  }
+
+  @Test
+  void singleCallsThrowTheClientException() {
+    assertThatThrownBy(() -> client.getAnalysis(STUDY_ID, MISSING))
+        .isInstanceOfSatisfying(
+            AriaClientException.class,
+            e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.NOT_FOUND));
+  }
+
+  /** Answers from memory, never calling song or score. */
+  private static class StubClient extends AriaClient {
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    StubClient() {
+      super(properties());
+    }
+
+    @Override
+    public Mono<Analysis> getAnalysis(String studyId, UUID analysisId) {
+      if (analysisId.equals(MISSING)) {
+        return Mono.error(new AriaClientException(HttpStatus.NOT_FOUND, "Analysis not found"));
+      }
+      val analysis = new Analysis();
+      analysis.setAnalysisId(analysisId.toString());
+      return Mono.delay(Duration.ofMillis(analysisId.equals(SLOW) ? 200 : 0)).thenReturn(analysis);
+    }
+
+    @Override
+    public Mono<String> publishAnalysis(String studyId, UUID analysisId) {
+      if (analysisId.equals(EMPTY)) {
+        return Mono.empty();
+      }
+      return Mono.delay(Duration.ofMillis(50))
+          .doOnSubscribe(s -> maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max))
+          .doOnTerminate(inFlight::decrementAndGet)
+          .thenReturn("OK");
+    }
+
+    @Override
+    public Mono<String> uploadAndFinalize(AnalysisFile analysisFile, Path file) {
+      // later files finish first
+      val delay = Map.of("c.bam", 150, "a.bam", 100, "b.bam", 0).get(file.toString());
+      return Mono.delay(Duration.ofMillis(delay)).thenReturn(file.toString());
+    }
+
+    private static AriaClientProperties properties() {
+      val properties = new AriaClientProperties();
+      properties.setSongRootUrl("http://localhost:8089");
+      properties.setScoreRootUrl("http://localhost:8087");
+      properties.setClientId("id");
+      properties.setClientSecret("secret");
+      properties.setTokenUrl("http://localhost:8081/oauth/token");
+      properties.setRetryMaxAttempts(0);
+      properties.setRetryDelaySec(0);
+      return properties;
+    }
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.client;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+public class ByteRangeTest {
+
+  @Test
+  void splitsIntoRangesOfRangeSize() {
+    assertThat(ByteRange.split(30, 10))
+        .containsExactly(new ByteRange(0, 9), new ByteRange(10, 19), new ByteRange(20, 29));
+  }
+
+  @Test
+  void lastRangeIsShorter() {
+    assertThat(ByteRange.split(25, 10))
+        .containsExactly(new ByteRange(0, 9), new ByteRange(10, 19), new ByteRange(20, 24));
+    assertThat(ByteRange.split(25, 10).get(2).length()).isEqualTo(5);
+  }
+
+  @Test
+  void objectSmallerThanRangeSize() {
+    assertThat(ByteRange.split(5, 10)).containsExactly(new ByteRange(0, 4));
+  }
+
+  @Test
+  void emptyObjectHasNoRanges() {
+    assertThat(ByteRange.split(0, 10)).isEmpty();
+  }
+
+  @Test
+  void rangesCoverEveryByteOnce() {
+    long position = 0;
+    for (ByteRange range : ByteRange.split(1_000_003, 4096)) {
+      assertThat(range.getStart()).isEqualTo(position);
+      position += range.length();
+    }
+    assertThat(position).isEqualTo(1_000_003);
+  }
+
+  @Test
+  void rangeHeaderIsInclusive() {
+    assertThat(new ByteRange(10, 19).toRangeHeader()).isEqualTo("bytes=10-19");
+    assertThat(new ByteRange(10, 19).length()).isEqualTo(10);
+  }
+}
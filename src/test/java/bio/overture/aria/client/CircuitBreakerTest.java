@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.client;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import bio.overture.aria.client.CircuitBreaker.State;
+import bio.overture.aria.exceptions.AriaClientException;
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+public class CircuitBreakerTest {
+  private static final Duration OPEN_DURATION = Duration.ofMillis(200);
+
+  private final AtomicInteger exchanges = new AtomicInteger();
+
+  @Test
+  void opensAfterConsecutiveFailures() {
+    val circuitBreaker = CircuitBreaker.of(Downstream.SONG, 3, OPEN_DURATION);
+
+    send(circuitBreaker, HttpStatus.INTERNAL_SERVER_ERROR);
+    send(circuitBreaker, HttpStatus.BAD_GATEWAY);
+    assertThat(circuitBreaker.getState()).isEqualTo(State.CLOSED);
+    send(circuitBreaker, new IOException("Connection refused"));
+
+    assertThat(circuitBreaker.getState()).isEqualTo(State.OPEN);
+    assertThat(circuitBreaker.isOpen()).isTrue();
+  }
+
+  @Test
+  void successResetsTheFailures() {
+    val circuitBreaker = CircuitBreaker.of(Downstream.SONG, 3, OPEN_DURATION);
+
+    send(circuitBreaker, HttpStatus.INTERNAL_SERVER_ERROR);
+    send(circuitBreaker, HttpStatus.INTERNAL_SERVER_ERROR);
+    // a 4xx is the caller's problem, not the downstream failing
+    send(circuitBreaker, HttpStatus.NOT_FOUND);
+    send(circuitBreaker, HttpStatus.INTERNAL_SERVER_ERROR);
+    send(circuitBreaker, HttpStatus.INTERNAL_SERVER_ERROR);
+
+    assertThat(circuitBreaker.getState()).isEqualTo(State.CLOSED);
+  }
+
+  @Test
+  void failsFastWhileOpen() {
+    val circuitBreaker = open(CircuitBreaker.of(Downstream.SONG, 1, OPEN_DURATION));
+    val exchangesBefore = exchanges.get();
+
+    StepVerifier.create(exchange(circuitBreaker, Mono.just(response(HttpStatus.OK))))
+        .expectErrorSatisfies(
+            e ->
+                assertThat(((AriaClientException) e).getStatus())
+                    .isEqualTo(HttpStatus.SERVICE_UNAVAILABLE))
+        .verify();
+    assertThat(exchanges).hasValue(exchangesBefore);
+  }
+
+  @Test
+  void closesWhenTheProbeSucceeds() throws Exception {
+    val circuitBreaker = open(CircuitBreaker.of(Downstream.SONG, 1, OPEN_DURATION));
+    Thread.sleep(OPEN_DURATION.toMillis() + 50);
+
+    send(circuitBreaker, HttpStatus.OK);
+
+    assertThat(circuitBreaker.getState()).isEqualTo(State.CLOSED);
+  }
+
+  @Test
+  void reopensWhenTheProbeFails() throws Exception {
+    val circuitBreaker = open(CircuitBreaker.of(Downstream.SONG, 5, OPEN_DURATION));
+    Thread.sleep(OPEN_DURATION.toMillis() + 50);
+
+    // a single failed probe is enough, whatever the threshold
+    send(circuitBreaker, HttpStatus.SERVICE_UNAVAILABLE);
+
+    assertThat(circuitBreaker.getState()).isEqualTo(State.OPEN);
+    assertThat(circuitBreaker.isOpen()).isTrue();
+  }
+
+  @Test
+  void letsOneProbeThroughAtATime() throws Exception {
+    val circuitBreaker = open(CircuitBreaker.of(Downstream.SONG, 1, OPEN_DURATION));
+    Thread.sleep(OPEN_DURATION.toMillis() + 50);
+
+    val probe = exchange(circuitBreaker, Mono.never()).subscribe();
+    StepVerifier.create(exchange(circuitBreaker, Mono.just(response(HttpStatus.OK))))
+        .expectError(AriaClientException.class)
+        .verify();
+
+    // a cancelled probe says nothing about the downstream, the next request probes instead
+    probe.dispose();
+    send(circuitBreaker, HttpStatus.OK);
+    assertThat(circuitBreaker.getState()).isEqualTo(State.CLOSED);
+  }
+
+  @Test
+  void disabledNeverOpens() {
+    val circuitBreaker = CircuitBreaker.disabled(Downstream.SONG);
+
+    for (int i = 0; i < 100; i++) {
+      send(circuitBreaker, HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    assertThat(circuitBreaker.getState()).isEqualTo(State.CLOSED);
+  }
+
+  private CircuitBreaker open(CircuitBreaker circuitBreaker) {
+    while (circuitBreaker.getState() != State.OPEN) {
+      send(circuitBreaker, HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+    return circuitBreaker;
+  }
+
+  private void send(CircuitBreaker circuitBreaker, HttpStatus status) {
+    exchange(circuitBreaker, Mono.just(response(status))).block();
+  }
+
+  private void send(CircuitBreaker circuitBreaker, Throwable error) {
+    exchange(circuitBreaker, Mono.error(error)).onErrorResume(e -> Mono.empty()).block();
+  }
+
+  private Mono<ClientResponse> exchange(
+      CircuitBreaker circuitBreaker, Mono<ClientResponse> result) {
+    ExchangeFunction exchange =
+        request -> Mono.defer(() -> result.doOnSubscribe(s -> exchanges.incrementAndGet()));
+    return circuitBreaker
+        .filter()
+        .filter(
+            ClientRequest.create(HttpMethod.GET, URI.create("http://song.stub")).build(), exchange);
+  }
+
+  private static ClientResponse response(HttpStatus status) {
+    return ClientResponse.create(status).build();
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.client;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import bio.overture.aria.properties.AriaClientProperties;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.val;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+/** Hedged getAnalysis calls against a stub song whose first answer for some analyses is slow. */
+public class HedgingTest {
+  private static final String STUDY_ID = "TEST-CA";
+  private static final Duration SLOW = Duration.ofMillis(1500);
+
+  private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+  private final Set<String> slowAnalyses = ConcurrentHashMap.newKeySet();
+  private final Set<String> failingHedges = ConcurrentHashMap.newKeySet();
+  private DisposableServer song;
+
+  @BeforeEach
+  void startSong() {
+    song =
+        HttpServer.create()
+            .port(0)
+            .route(
+                routes ->
+                    routes
+                        .post(
+                            "/oauth/token",
+                            (request, response) ->
+                                response
+                                    .header(HttpHeaderNames.CONTENT_TYPE, "application/json")
+                                    .sendString(
+                                        Mono.just(
+                                            "{\"access_token\":\"test\",\"token_type\":\"bearer\","
+                                                + "\"expires_in\":3600}")))
+                        .get(
+                            "/studies/{studyId}/analysis/{analysisId}",
+                            (request, response) -> {
+                              val analysisId = request.param("analysisId");
+                              response.header(HttpHeaderNames.CONTENT_TYPE, "application/json");
+                              val attempt =
+                                  requests
+                                      .computeIfAbsent(analysisId, id -> new AtomicInteger())
+                                      .incrementAndGet();
+                              if (!slowAnalyses.contains(analysisId)) {
+                                return response.sendString(analysis(analysisId, Duration.ZERO));
+                              }
+                              if (attempt == 1) {
+                                return response.sendString(analysis(analysisId, SLOW));
+                              }
+                              if (failingHedges.contains(analysisId)) {
+                                return response
+                                    .status(HttpResponseStatus.INTERNAL_SERVER_ERROR)
+                                    .sendString(Mono.just("Internal Server Error"));
+                              }
+                              return response.sendString(analysis(analysisId, Duration.ZERO));
+                            }))
+            .bindNow();
+  }
+
+  @AfterEach
+  void stopSong() {
+    song.disposeNow();
+  }
+
+  @Test
+  void hedgeAnswersASlowRequest() {
+    try (val client = client(true)) {
+      warmUp(client);
+      val analysisId = slowAnalysis();
+
+      val start = System.nanoTime();
+      val analysis = client.getAnalysis(STUDY_ID, analysisId).block();
+
+      assertThat(analysis.getAnalysisId()).isEqualTo(analysisId.toString());
+      assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(SLOW);
+      assertThat(requests.get(analysisId.toString())).hasValue(2);
+    }
+  }
+
+  @Test
+  void failedHedgeDoesntWin() {
+    try (val client = client(true)) {
+      warmUp(client);
+      val analysisId = slowAnalysis();
+      failingHedges.add(analysisId.toString());
+
+      val analysis = client.getAnalysis(STUDY_ID, analysisId).block();
+
+      assertThat(analysis.getAnalysisId()).isEqualTo(analysisId.toString());
+      assertThat(requests.get(analysisId.toString())).hasValue(2);
+    }
+  }
+
+  @Test
+  void noHedgeWhileDisabled() {
+    try (val client = client(false)) {
+      warmUp(client);
+      val analysisId = slowAnalysis();
+
+      client.getAnalysis(STUDY_ID, analysisId).block();
+
+      assertThat(requests.get(analysisId.toString())).hasValue(1);
+    }
+  }
+
+  @Test
+  void noHedgeUntilTheUsualLatencyIsKnown() {
+    try (val client = client(true)) {
+      val analysisId = slowAnalysis();
+
+      client.getAnalysis(STUDY_ID, analysisId).block();
+
+      assertThat(requests.get(analysisId.toString())).hasValue(1);
+    }
+  }
+
+  private void warmUp(AriaClient client) {
+    for (int i = 0; i < 40; i++) {
+      client.getAnalysis(STUDY_ID, UUID.randomUUID()).block();
+    }
+  }
+
+  private UUID slowAnalysis() {
+    val analysisId = UUID.randomUUID();
+    slowAnalyses.add(analysisId.toString());
+    return analysisId;
+  }
+
+  private AriaClient client(boolean hedgingEnabled) {
+    val root = "http://localhost:" + song.port();
+    val properties = new AriaClientProperties();
+    properties.setSongRootUrl(root);
+    properties.setScoreRootUrl(root);
+    properties.setClientId("id");
+    properties.setClientSecret("secret");
+    properties.setTokenUrl(root + "/oauth/token");
+    properties.setRetryMaxAttempts(0);
+    properties.setRetryDelaySec(0);
+    properties.setHedgingEnabled(hedgingEnabled);
+    return new AriaClient(properties);
+  }
+
+  private static Mono<String> analysis(String analysisId, Duration delay) {
+    return Mono.delay(delay)
+        .thenReturn("{\"analysisId\":\"" + analysisId + "\",\"studyId\":\"" + STUDY_ID + "\"}");
+  }
+}
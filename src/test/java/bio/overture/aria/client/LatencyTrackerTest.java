@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.client;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+public class LatencyTrackerTest {
+
+  @Test
+  void noPercentileUntilEnoughSamples() {
+    val latencyTracker = new LatencyTracker();
+    for (int i = 0; i < 31; i++) {
+      latencyTracker.record(Duration.ofMillis(10).toNanos());
+    }
+    assertThat(latencyTracker.percentile(95)).isEmpty();
+
+    latencyTracker.record(Duration.ofMillis(10).toNanos());
+    assertThat(latencyTracker.percentile(95)).contains(Duration.ofMillis(10));
+  }
+
+  @Test
+  void percentileOfRecordedLatencies() {
+    val latencyTracker = new LatencyTracker();
+    for (int i = 100; i >= 1; i--) {
+      latencyTracker.record(Duration.ofMillis(i).toNanos());
+    }
+
+    assertThat(latencyTracker.percentile(50)).contains(Duration.ofMillis(50));
+    assertThat(latencyTracker.percentile(95)).contains(Duration.ofMillis(95));
+    assertThat(latencyTracker.percentile(100)).contains(Duration.ofMillis(100));
+    assertThat(latencyTracker.percentile(0)).contains(Duration.ofMillis(1));
+  }
+
+  @Test
+  void onlyRecentLatenciesCount() {
+    val latencyTracker = new LatencyTracker();
+    for (int i = 0; i < 512; i++) {
+      latencyTracker.record(Duration.ofSeconds(1).toNanos());
+    }
+    for (int i = 0; i < 512; i++) {
+      latencyTracker.record(Duration.ofMillis(1).toNanos());
+    }
+
+    assertThat(latencyTracker.percentile(100)).contains(Duration.ofMillis(1));
+  }
+}
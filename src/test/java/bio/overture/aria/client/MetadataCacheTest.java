@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.client;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public class MetadataCacheTest {
+  private static final Duration TTL = Duration.ofMillis(200);
+
+  private final AtomicInteger loads = new AtomicInteger();
+
+  @Test
+  void keepsValuesForTheirTtl() throws Exception {
+    val cache = MetadataCache.<String, String>of(10, value -> TTL);
+
+    assertThat(cache.get("a", loader("value")).block()).isEqualTo("value");
+    assertThat(cache.get("a", loader("other")).block()).isEqualTo("value");
+    assertThat(loads).hasValue(1);
+
+    Thread.sleep(TTL.toMillis() + 50);
+    cache.get("a", loader("other")).block();
+    assertThat(loads).hasValue(2);
+  }
+
+  @Test
+  void ttlDependsOnTheValue() {
+    val cache =
+        MetadataCache.<String, String>of(
+            10, value -> value.equals("published") ? TTL : Duration.ZERO);
+
+    cache.get("a", loader("published")).block();
+    cache.get("a", loader("published")).block();
+    cache.get("b", loader("unpublished")).block();
+    cache.get("b", loader("unpublished")).block();
+
+    assertThat(loads).hasValue(3);
+  }
+
+  @Test
+  void concurrentGetsShareOneLoad() {
+    val cache = MetadataCache.<String, String>of(10, value -> TTL);
+    Supplier<Mono<String>> slowLoader =
+        () -> Mono.delay(Duration.ofMillis(100)).then(loader("value").get());
+
+    val values = Flux.range(0, 8).flatMap(i -> cache.get("a", slowLoader)).collectList().block();
+
+    assertThat(values).containsOnly("value").hasSize(8);
+    assertThat(loads).hasValue(1);
+  }
+
+  @Test
+  void errorsAndEmptyResultsAreNotKept() {
+    val cache = MetadataCache.<String, String>of(10, value -> TTL);
+    // fails, then completes empty, then finds the value
+    Supplier<Mono<String>> flakyLoader =
+        () ->
+            Mono.defer(
+                () -> {
+                  val load = loads.incrementAndGet();
+                  return load == 1
+                      ? Mono.error(new IllegalStateException("Song is unavailable"))
+                      : load == 2 ? Mono.empty() : Mono.just("value");
+                });
+
+    assertThat(cache.get("a", flakyLoader).onErrorResume(e -> Mono.empty()).blockOptional())
+        .isEmpty();
+    assertThat(cache.get("a", flakyLoader).blockOptional()).isEmpty();
+    assertThat(cache.get("a", flakyLoader).block()).isEqualTo("value");
+    assertThat(cache.get("a", flakyLoader).block()).isEqualTo("value");
+    assertThat(loads).hasValue(3);
+  }
+
+  @Test
+  void invalidatedKeysAreLoadedAgain() {
+    val cache = MetadataCache.<String, String>of(10, value -> TTL);
+    cache.get("a", loader("value")).block();
+
+    cache.invalidate("a");
+
+    assertThat(cache.get("a", loader("other")).block()).isEqualTo("other");
+    assertThat(loads).hasValue(2);
+  }
+
+  @Test
+  void evictsLeastRecentlyUsedBeyondMaxSize() {
+    val cache = MetadataCache.<String, String>of(2, value -> TTL);
+    cache.get("a", loader("a")).block();
+    cache.get("b", loader("b")).block();
+    cache.get("a", loader("a")).block();
+
+    cache.get("c", loader("c")).block();
+    cache.get("a", loader("a")).block();
+    assertThat(loads).hasValue(3);
+
+    cache.get("b", loader("b")).block();
+    assertThat(loads).hasValue(4);
+  }
+
+  @Test
+  void disabledLoadsEveryTime() {
+    val cache = MetadataCache.<String, String>disabled();
+
+    cache.get("a", loader("value")).block();
+    cache.get("a", loader("value")).block();
+
+    assertThat(loads).hasValue(2);
+  }
+
+  private Supplier<Mono<String>> loader(String value) {
+    return () ->
+        Mono.fromCallable(
+            () -> {
+              loads.incrementAndGet();
+              return value;
+            });
+  }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.client;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import bio.overture.aria.exceptions.AriaClientException;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.val;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.test.StepVerifier;
+
+/** Token refreshes against a stub token endpoint that hands out token-1, token-2 and so on. */
+public class OAuthTokenManagerTest {
+  private final AtomicInteger tokensIssued = new AtomicInteger();
+  private volatile int expiresInSec = 3600;
+  private volatile Duration tokenDelay = Duration.ZERO;
+  private volatile HttpResponseStatus tokenStatus = HttpResponseStatus.OK;
+  private DisposableServer tokenEndpoint;
+
+  @BeforeEach
+  void startTokenEndpoint() {
+    tokenEndpoint =
+        HttpServer.create()
+            .port(0)
+            .route(
+                routes ->
+                    routes.post(
+                        "/oauth/token",
+                        (request, response) -> {
+                          response.header(HttpHeaderNames.CONTENT_TYPE, "application/json");
+                          if (tokenStatus != HttpResponseStatus.OK) {
+                            return response
+                                .status(tokenStatus)
+                                .sendString(Mono.just("{\"error\":\"invalid_client\"}"));
+                          }
+                          val token = "token-" + tokensIssued.incrementAndGet();
+                          return response.sendString(
+                              Mono.delay(tokenDelay)
+                                  .thenReturn(
+                                      "{\"access_token\":\""
+                                          + token
+                                          + "\",\"token_type\":\"bearer\",\"expires_in\":"
+                                          + expiresInSec
+                                          + "}"));
+                        }))
+            .bindNow();
+  }
+
+  @AfterEach
+  void stopTokenEndpoint() {
+    tokenEndpoint.disposeNow();
+  }
+
+  @Test
+  void concurrentRequestsShareOneRefresh() {
+    tokenDelay = Duration.ofMillis(200);
+    val tokenManager = tokenManager(Duration.ofSeconds(60));
+
+    val tokens =
+        Flux.range(0, 8)
+            .flatMap(i -> tokenManager.token())
+            .map(OAuth2AccessToken::getTokenValue)
+            .collectList()
+            .block();
+
+    assertThat(tokens).containsOnly("token-1").hasSize(8);
+    assertThat(tokensIssued).hasValue(1);
+  }
+
+  @Test
+  void currentTokenIsReusedUntilItIsDue() {
+    val tokenManager = tokenManager(Duration.ofSeconds(60));
+
+    tokenManager.token().block();
+    tokenManager.token().block();
+
+    assertThat(tokensIssued).hasValue(1);
+  }
+
+  @Test
+  void refreshesAheadOfExpiryInTheBackground() throws Exception {
+    // a two second token is refreshed half way through, well before the minute ahead asked for
+    expiresInSec = 2;
+    val tokenManager = tokenManager(Duration.ofSeconds(60));
+    tokenManager.token().block();
+    Thread.sleep(1200);
+
+    // the request that finds the token due still goes out with it, without waiting
+    assertThat(tokenManager.token().block().getTokenValue()).isEqualTo("token-1");
+    assertThat(awaitToken(tokenManager, "token-2")).isTrue();
+    assertThat(tokensIssued).hasValue(2);
+  }
+
+  @Test
+  void unauthorizedResponseDropsTheToken() {
+    val tokenManager = tokenManager(Duration.ofSeconds(60));
+    val bearers = new ArrayList<String>();
+
+    send(tokenManager, bearers, HttpStatus.UNAUTHORIZED);
+    send(tokenManager, bearers, HttpStatus.OK);
+    send(tokenManager, bearers, HttpStatus.OK);
+
+    assertThat(bearers).containsExactly("Bearer token-1", "Bearer token-2", "Bearer token-2");
+  }
+
+  @Test
+  void rejectedCredentialsFailWithUnauthorized() {
+    tokenStatus = HttpResponseStatus.UNAUTHORIZED;
+    val tokenManager = tokenManager(Duration.ofSeconds(60));
+
+    StepVerifier.create(tokenManager.token())
+        .expectErrorSatisfies(
+            e ->
+                assertThat(((AriaClientException) e).getStatus())
+                    .isEqualTo(HttpStatus.UNAUTHORIZED))
+        .verify();
+  }
+
+  private OAuthTokenManager tokenManager(Duration refreshAhead) {
+    return OAuthTokenManager.of(
+        "test",
+        "http://localhost:" + tokenEndpoint.port() + "/oauth/token",
+        "id",
+        "secret",
+        refreshAhead,
+        new ReactorClientHttpConnector());
+  }
+
+  private void send(OAuthTokenManager tokenManager, List<String> bearers, HttpStatus status) {
+    tokenManager
+        .filter()
+        .filter(
+            ClientRequest.create(HttpMethod.GET, URI.create("http://song.stub")).build(),
+            request -> {
+              bearers.add(request.headers().getFirst(HttpHeaders.AUTHORIZATION));
+              return Mono.just(ClientResponse.create(status).build());
+            })
+        .block();
+  }
+
+  private static boolean awaitToken(OAuthTokenManager tokenManager, String expected)
+      throws InterruptedException {
+    for (int i = 0; i < 50; i++) {
+      if (tokenManager.token().block().getTokenValue().equals(expected)) {
+        return true;
+      }
+      Thread.sleep(100);
+    }
+    return false;
+  }
+}
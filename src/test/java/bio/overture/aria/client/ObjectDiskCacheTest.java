@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.client;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+public class ObjectDiskCacheTest {
+  @TempDir Path directory;
+
+  private final AtomicInteger loads = new AtomicInteger();
+
+  @Test
+  void missLoadsTheObject() throws Exception {
+    val cache = ObjectDiskCache.of(directory, 1024);
+
+    val entry = cache.get("object-1", "ABC123", loader("content")).block();
+
+    assertThat(entry).isEqualTo(directory.resolve("object-1-abc123"));
+    assertThat(Files.readString(entry)).isEqualTo("content");
+    assertThat(loads).hasValue(1);
+  }
+
+  @Test
+  void hitIsReadWithoutLoading() {
+    val cache = ObjectDiskCache.of(directory, 1024);
+    cache.get("object-1", "abc123", loader("content")).block();
+
+    val entry = cache.get("object-1", "abc123", loader("other")).block();
+
+    assertThat(entry).isEqualTo(directory.resolve("object-1-abc123"));
+    assertThat(loads).hasValue(1);
+  }
+
+  @Test
+  void findsEntriesByObjectIdAlone() {
+    val cache = ObjectDiskCache.of(directory, 1024);
+    cache.get("object-1", "abc123", loader("content")).block();
+
+    assertThat(cache.find("object-1").block()).isEqualTo(directory.resolve("object-1-abc123"));
+    assertThat(cache.find("object-2").blockOptional()).isEmpty();
+  }
+
+  @Test
+  void concurrentMissesShareOneLoad() {
+    val cache = ObjectDiskCache.of(directory, 1024);
+    Function<Path, Mono<Void>> slowLoader =
+        entry -> Mono.delay(Duration.ofMillis(200)).then(loader("content").apply(entry));
+
+    val entries =
+        Flux.range(0, 4)
+            .flatMap(
+                i ->
+                    cache
+                        .get("object-1", "abc123", slowLoader)
+                        .subscribeOn(Schedulers.boundedElastic()))
+            .collectList()
+            .block();
+
+    assertThat(entries).containsOnly(directory.resolve("object-1-abc123")).hasSize(4);
+    assertThat(loads).hasValue(1);
+  }
+
+  @Test
+  void evictsLeastRecentlyUsedEntries() throws Exception {
+    val cache = ObjectDiskCache.of(directory, 15);
+    cache.get("object-1", "aaa", loader("123456")).block();
+    Thread.sleep(50);
+    cache.get("object-2", "bbb", loader("123456")).block();
+    Thread.sleep(50);
+    // a hit makes object-1 the most recently used
+    cache.get("object-1", "aaa", loader("123456")).block();
+    Thread.sleep(50);
+
+    cache.get("object-3", "ccc", loader("123456")).block();
+
+    assertThat(directory.resolve("object-1-aaa")).exists();
+    assertThat(directory.resolve("object-2-bbb")).doesNotExist();
+    assertThat(directory.resolve("object-3-ccc")).exists();
+  }
+
+  @Test
+  void directoryIsSharedByOneCache() {
+    val cache = ObjectDiskCache.of(directory, 1024);
+
+    assertThat(ObjectDiskCache.of(directory.resolve("."), 1024)).isSameAs(cache);
+    assertThatThrownBy(() -> ObjectDiskCache.of(directory, 2048))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  private Function<Path, Mono<Void>> loader(String content) {
+    return entry ->
+        Mono.fromCallable(
+                () -> {
+                  loads.incrementAndGet();
+                  return Files.write(entry, content.getBytes(StandardCharsets.UTF_8));
+                })
+            .then();
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.client;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+public class PartSlicerTest {
+  private static final NettyDataBufferFactory BUFFERS =
+      new NettyDataBufferFactory(UnpooledByteBufAllocator.DEFAULT);
+
+  @Test
+  void buffersAlignedWithParts() {
+    val content = buffers("abc", "def", "gh");
+
+    StepVerifier.create(parts(content, List.of(3L, 3L, 2L)))
+        .expectNext("abc", "def", "gh")
+        .thenConsumeWhile(String::isEmpty)
+        .verifyComplete();
+    assertReleased(content);
+  }
+
+  @Test
+  void bufferStraddlingSeveralParts() {
+    val content = buffers("a", "bcdefgh", "ij");
+
+    StepVerifier.create(parts(content, List.of(2L, 3L, 5L)))
+        .expectNext("ab", "cde", "fghij")
+        .thenConsumeWhile(String::isEmpty)
+        .verifyComplete();
+    assertReleased(content);
+  }
+
+  @Test
+  void partBoundariesInsideBuffers() {
+    val content = buffers("abcd", "efgh", "ijkl");
+
+    StepVerifier.create(parts(content, List.of(5L, 5L, 2L)))
+        .expectNext("abcde", "fghij", "kl")
+        .thenConsumeWhile(String::isEmpty)
+        .verifyComplete();
+    assertReleased(content);
+  }
+
+  @Test
+  void longerContentFails() {
+    val content = buffers("abc", "defg");
+
+    StepVerifier.create(parts(content, List.of(3L, 3L)))
+        .expectNext("abc")
+        .expectErrorMessage("Content is larger than the parts of the upload")
+        .verify();
+    assertReleased(content);
+  }
+
+  @Test
+  void contentEndingInsidePartFails() {
+    val content = buffers("abc", "de");
+
+    StepVerifier.create(parts(content, List.of(3L, 3L)))
+        .expectNext("abc")
+        .expectErrorMessage("Content is smaller than the parts of the upload")
+        .verify();
+    assertReleased(content);
+  }
+
+  @Test
+  void contentMissingWholePartsFails() {
+    val content = buffers("abc");
+
+    StepVerifier.create(parts(content, List.of(3L, 3L)))
+        .expectNext("abc")
+        .expectErrorMessage("Content is smaller than the parts of the upload")
+        .verify();
+    assertReleased(content);
+  }
+
+  @Test
+  void emptyContentWithoutParts() {
+    StepVerifier.create(parts(List.of(), List.of()))
+        .thenConsumeWhile(String::isEmpty)
+        .verifyComplete();
+  }
+
+  private static Flux<String> parts(List<DataBuffer> content, List<Long> partSizes) {
+    // each window is joined into one string, a window failing fails the stream
+    return PartSlicer.slice(Flux.fromIterable(content), partSizes)
+        .concatMap(
+            window ->
+                DataBufferUtils.join(window)
+                    .map(
+                        buffer -> {
+                          val part = buffer.toString(StandardCharsets.UTF_8);
+                          DataBufferUtils.release(buffer);
+                          return part;
+                        })
+                    .defaultIfEmpty(""));
+  }
+
+  private static List<DataBuffer> buffers(String... chunks) {
+    return List.of(chunks).stream()
+        .map(chunk -> BUFFERS.wrap(chunk.getBytes(StandardCharsets.UTF_8)))
+        .collect(Collectors.toList());
+  }
+
+  private static void assertReleased(List<DataBuffer> content) {
+    assertThat(content)
+        .allSatisfy(
+            buffer -> assertThat(((NettyDataBuffer) buffer).getNativeBuffer().refCnt()).isZero());
+  }
+}
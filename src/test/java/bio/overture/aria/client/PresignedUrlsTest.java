@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.client;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+import org.junit.jupiter.api.Test;
+
+public class PresignedUrlsTest {
+
+  @Test
+  void amazonSignatureVersion4() {
+    assertThat(
+            PresignedUrls.expiryOf(
+                "https://object.store/bucket/data/object-1?X-Amz-Algorithm=AWS4-HMAC-SHA256"
+                    + "&X-Amz-Date=20210601T120000Z&X-Amz-Expires=86400"
+                    + "&X-Amz-Signature=abc"))
+        .contains(Instant.parse("2021-06-02T12:00:00Z"));
+  }
+
+  @Test
+  void googleSignatureVersion4() {
+    assertThat(
+            PresignedUrls.expiryOf(
+                "https://storage.googleapis.com/bucket/object-1?X-Goog-Algorithm=GOOG4-RSA-SHA256"
+                    + "&X-Goog-Date=20210601T120000Z&X-Goog-Expires=900&X-Goog-Signature=abc"))
+        .contains(Instant.parse("2021-06-01T12:15:00Z"));
+  }
+
+  @Test
+  void signatureVersion2() {
+    assertThat(
+            PresignedUrls.expiryOf(
+                "https://object.store/bucket/object-1?AWSAccessKeyId=key&Expires=1622548800"
+                    + "&Signature=abc"))
+        .contains(Instant.parse("2021-06-01T12:00:00Z"));
+  }
+
+  @Test
+  void noExpiryWithoutSignatureParameters() {
+    assertThat(PresignedUrls.expiryOf("https://object.store/bucket/object-1")).isEmpty();
+    assertThat(PresignedUrls.expiryOf("https://object.store/bucket/object-1?X-Amz-Expires=900"))
+        .isEmpty();
+  }
+
+  @Test
+  void noExpiryForUnreadableParameters() {
+    assertThat(
+            PresignedUrls.expiryOf(
+                "https://object.store/bucket/object-1?X-Amz-Date=yesterday&X-Amz-Expires=900"))
+        .isEmpty();
+    assertThat(PresignedUrls.expiryOf("https://object.store/bucket/object-1?Expires=soon"))
+        .isEmpty();
+  }
+}
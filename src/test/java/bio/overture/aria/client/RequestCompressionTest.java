@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.client;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.client.reactive.MockClientHttpRequest;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeStrategies;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+public class RequestCompressionTest {
+  private static final String PAYLOAD = "{\"studyId\":\"TEST-CA\",\"files\":[]}".repeat(100);
+
+  private final AtomicReference<ClientRequest> sent = new AtomicReference<>();
+  private final WebClient client =
+      WebClient.builder()
+          .exchangeFunction(
+              request -> {
+                sent.set(request);
+                return Mono.just(ClientResponse.create(HttpStatus.OK).build());
+              })
+          .build();
+
+  @Test
+  void gzipsLargeBodies() throws Exception {
+    send(RequestCompression.of("gzip", 1024), PAYLOAD);
+
+    assertThat(sent.get().headers().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+    assertThat(decompress(sentBody(), GZIPInputStream::new)).isEqualTo(PAYLOAD);
+  }
+
+  @Test
+  void deflatesLargeBodies() throws Exception {
+    send(RequestCompression.of("deflate", 1024), PAYLOAD);
+
+    assertThat(sent.get().headers().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("deflate");
+    assertThat(decompress(sentBody(), InflaterInputStream::new)).isEqualTo(PAYLOAD);
+  }
+
+  @Test
+  void sendsSmallBodiesAsTheyAre() {
+    send(RequestCompression.of("gzip", PAYLOAD.length() + 1), PAYLOAD);
+
+    assertThat(sent.get().headers().containsKey(HttpHeaders.CONTENT_ENCODING)).isFalse();
+    assertThat(new String(sentBody(), StandardCharsets.UTF_8)).isEqualTo(PAYLOAD);
+  }
+
+  @Test
+  void disabledNeverCompresses() {
+    send(RequestCompression.disabled(), PAYLOAD);
+
+    assertThat(sent.get().headers().containsKey(HttpHeaders.CONTENT_ENCODING)).isFalse();
+    assertThat(new String(sentBody(), StandardCharsets.UTF_8)).isEqualTo(PAYLOAD);
+  }
+
+  @Test
+  void rejectsUnknownEncodings() {
+    assertThatThrownBy(() -> RequestCompression.of("br", 1024))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  private void send(RequestCompression compression, String body) {
+    compression
+        .body(client.post().uri("http://song.stub/submit"), body)
+        .retrieve()
+        .toBodilessEntity()
+        .block();
+  }
+
+  private byte[] sentBody() {
+    val request = new MockClientHttpRequest(HttpMethod.POST, "http://song.stub/submit");
+    sent.get().writeTo(request, ExchangeStrategies.withDefaults()).block();
+    val body = DataBufferUtils.join(request.getBody()).block();
+    val bytes = new byte[body.readableByteCount()];
+    body.read(bytes);
+    DataBufferUtils.release(body);
+    return bytes;
+  }
+
+  private static String decompress(byte[] bytes, Decompressor decompressor) throws IOException {
+    try (val in = decompressor.apply(new ByteArrayInputStream(bytes))) {
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  private interface Decompressor {
+    InputStream apply(InputStream in) throws IOException;
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2021 The Ontario Institute for Cancer Research. All rights reserved
+ *
+ * This program and the accompanying materials are made available under the terms of the GNU Affero General Public License v3.0.
+ * You should have received a copy of the GNU Affero General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ * OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER
+ * IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN
+ * ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package bio.overture.aria.client;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import reactor.core.publisher.Mono;
+
+public class RetryBudgetTest {
+
+  @Test
+  void startsFull() {
+    val retryBudget = RetryBudget.of(0.1, 2);
+
+    assertThat(retryBudget.tryAcquire()).isTrue();
+    assertThat(retryBudget.tryAcquire()).isTrue();
+    assertThat(retryBudget.tryAcquire()).isFalse();
+  }
+
+  @Test
+  void everyRequestEarnsTheRatio() {
+    val retryBudget = RetryBudget.of(0.5, 2);
+    drain(retryBudget);
+
+    send(retryBudget);
+    assertThat(retryBudget.tryAcquire()).isFalse();
+    send(retryBudget);
+    assertThat(retryBudget.tryAcquire()).isTrue();
+    assertThat(retryBudget.tryAcquire()).isFalse();
+  }
+
+  @Test
+  void holdsAtMostMaxTokens() {
+    val retryBudget = RetryBudget.of(1, 2);
+
+    for (int i = 0; i < 10; i++) {
+      send(retryBudget);
+    }
+
+    assertThat(drain(retryBudget)).isEqualTo(2);
+  }
+
+  @Test
+  void unlimitedNeverRunsOut() {
+    val retryBudget = RetryBudget.unlimited();
+
+    for (int i = 0; i < 1000; i++) {
+      assertThat(retryBudget.tryAcquire()).isTrue();
+    }
+  }
+
+  private static int drain(RetryBudget retryBudget) {
+    int acquired = 0;
+    while (retryBudget.tryAcquire()) {
+      acquired++;
+    }
+    return acquired;
+  }
+
+  private static void send(RetryBudget retryBudget) {
+    retryBudget
+        .filter()
+        .filter(
+            ClientRequest.create(HttpMethod.GET, URI.create("http://song.stub")).build(),
+            request -> Mono.just(ClientResponse.create(HttpStatus.OK).build()))
+        .block();
+  }
+}